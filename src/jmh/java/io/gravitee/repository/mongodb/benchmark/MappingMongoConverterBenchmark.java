@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.benchmark;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.DefaultDBEncoder;
+import io.gravitee.repository.mongodb.management.ModelSamples;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.DbRefProxyHandler;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.DbRefResolverCallback;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the Spring Data read path for each <code>*Mongo</code> entity: from a {@link DBObject} to the
+ * entity, and from the BSON bytes received from the server to the entity.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingMongoConverterBenchmark {
+
+    private static final String MODEL_PACKAGE = "io.gravitee.repository.mongodb.management.internal.model.";
+
+    @Param({"ApiKeyMongo", "ApiMetadataMongo", "ApiMongo", "ApplicationMongo", "AuditMongo", "EventMongo",
+            "GroupMongo", "MembershipMongo", "MetadataMongo", "PageMongo", "PlanMongo", "RatingAnswerMongo",
+            "RatingMongo", "RoleMongo", "SubscriptionMongo", "TagMongo", "TenantMongo", "UserMongo", "ViewMongo"})
+    public String entity;
+
+    @Param({"1024", "204800"})
+    public int payloadSize;
+
+    private Class<?> entityClass;
+    private MappingMongoConverter converter;
+    private DBObject document;
+    private byte[] bson;
+
+    @Setup
+    public void setUp() throws Exception {
+        entityClass = Class.forName(MODEL_PACKAGE + entity);
+
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Collections.singleton(entityClass));
+        mappingContext.afterPropertiesSet();
+
+        converter = new MappingMongoConverter(new NoDbRefResolver(), mappingContext);
+        converter.afterPropertiesSet();
+
+        document = new BasicDBObject();
+        converter.write(ModelSamples.sample(entityClass, payloadSize), document);
+        bson = new DefaultDBEncoder().encode(document);
+    }
+
+    @Benchmark
+    public Object read() {
+        return converter.read(entityClass, document);
+    }
+
+    @Benchmark
+    public Object decodeAndRead() {
+        return converter.read(entityClass, new DefaultDBDecoder().decode(bson, (DBCollection) null));
+    }
+
+    /**
+     * None of the entities holds a reference to another document.
+     */
+    private static class NoDbRefResolver implements DbRefResolver {
+
+        @Override
+        public Object resolveDbRef(MongoPersistentProperty property, DBRef dbref, DbRefResolverCallback callback,
+                                   DbRefProxyHandler proxyHandler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DBRef createDbRef(org.springframework.data.mongodb.core.mapping.DBRef annotation,
+                                 MongoPersistentEntity<?> entity, Object id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DBObject fetch(DBRef dbRef) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.exceptions.TechnicalException;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.Membership;
+import io.gravitee.repository.management.model.Rating;
+import io.gravitee.repository.mongodb.management.internal.api.RatingMongoRepository;
+import io.gravitee.repository.mongodb.management.internal.event.EventMongoRepository;
+import io.gravitee.repository.mongodb.management.internal.membership.MembershipMongoRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the repositories which map their entities by hand, as a baseline for the
+ * {@link io.gravitee.repository.mongodb.management.mapper.GraviteeMapper} implementations.
+ *
+ * The repositories are called through their public API. The Spring Data repositories they rely on are replaced by
+ * an in-memory one holding the last inserted entity, so that only the mapping is measured.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandWrittenMapperBenchmark {
+
+    @Param({"1024", "204800"})
+    public int payloadSize;
+
+    private final MongoMembershipRepository membershipRepository = new MongoMembershipRepository();
+    private final MongoEventRepository eventRepository = new MongoEventRepository();
+    private final MongoRatingRepository ratingRepository = new MongoRatingRepository();
+
+    private Membership membership;
+    private Event event;
+    private Rating rating;
+
+    @Setup
+    public void setUp() throws TechnicalException {
+        ReflectionTestUtils.setField(membershipRepository, "internalMembershipRepo",
+                lastInserted(MembershipMongoRepository.class));
+        ReflectionTestUtils.setField(eventRepository, "internalEventRepo", lastInserted(EventMongoRepository.class));
+        // Payloads are stored inline by default, the store is then never called
+        ReflectionTestUtils.setField(eventRepository, "payloadStore", new MongoEventPayloadStore());
+        ReflectionTestUtils.setField(ratingRepository, "internalRatingRepository",
+                lastInserted(RatingMongoRepository.class));
+
+        membership = ModelSamples.sample(Membership.class, payloadSize);
+        membershipRepository.create(membership);
+        event = ModelSamples.sample(Event.class, payloadSize);
+        eventRepository.create(event);
+        rating = ModelSamples.sample(Rating.class, payloadSize);
+        ratingRepository.create(rating);
+    }
+
+    @Benchmark
+    public Optional<Membership> findMembershipById() throws TechnicalException {
+        return membershipRepository.findById(membership.getUserId(), membership.getReferenceType(),
+                membership.getReferenceId());
+    }
+
+    @Benchmark
+    public Membership createMembership() throws TechnicalException {
+        return membershipRepository.create(membership);
+    }
+
+    @Benchmark
+    public Optional<Event> findEventById() throws TechnicalException {
+        return eventRepository.findById(event.getId());
+    }
+
+    @Benchmark
+    public Event createEvent() throws TechnicalException {
+        return eventRepository.create(event);
+    }
+
+    @Benchmark
+    public Optional<Rating> findRatingById() throws TechnicalException {
+        return ratingRepository.findById(rating.getId());
+    }
+
+    @Benchmark
+    public Rating createRating() throws TechnicalException {
+        return ratingRepository.create(rating);
+    }
+
+    /**
+     * Returns a Spring Data repository whose <code>insert</code> keeps the given entity and returns it, and whose
+     * <code>findOne</code> returns the last inserted entity.
+     */
+    private static <R> R lastInserted(Class<R> repositoryClass) {
+        Object[] last = new Object[1];
+        return repositoryClass.cast(Proxy.newProxyInstance(repositoryClass.getClassLoader(),
+                new Class<?>[] {repositoryClass}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "insert":
+                            last[0] = args[0];
+                            return args[0];
+                        case "findOne":
+                            return last[0];
+                        default:
+                            throw new UnsupportedOperationException(method.toString());
+                    }
+                }));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.mapper;
+
+import io.gravitee.repository.management.model.Api;
+import io.gravitee.repository.management.model.ApiKey;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.Page;
+import io.gravitee.repository.mongodb.management.ModelSamples;
+import io.gravitee.repository.mongodb.management.internal.model.ApiKeyMongo;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import io.gravitee.repository.mongodb.management.internal.model.PageMongo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link GraviteeMapper} implementations. Run with <code>-prof gc</code> (default of the
+ * <code>jmh</code> profile) to get the allocation rate.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraviteeMapperBenchmark {
+
+    @Param({"dozer", "generated"})
+    public String mapper;
+
+    @Param({"1024", "204800"})
+    public int payloadSize;
+
+    private GraviteeMapper graviteeMapper;
+
+    private Api api;
+    private ApiMongo apiMongo;
+    private EventMongo eventMongo;
+    private List<ApiKeyMongo> apiKeysMongo;
+    private List<PageMongo> pagesMongo;
+
+    @Setup
+    public void setUp() {
+        graviteeMapper = "generated".equals(mapper) ? new GraviteeGeneratedMapper() : new GraviteeDozerMapper();
+
+        // Mongo samples are built from the domain ones, so that enum values are valid
+        api = ModelSamples.sample(Api.class, payloadSize);
+        apiMongo = graviteeMapper.map(api, ApiMongo.class);
+        eventMongo = graviteeMapper.map(ModelSamples.sample(Event.class, payloadSize), EventMongo.class);
+        apiKeysMongo = graviteeMapper.collection2list(ModelSamples.samples(ApiKey.class, 100, payloadSize),
+                ApiKey.class, ApiKeyMongo.class);
+        pagesMongo = graviteeMapper.collection2list(ModelSamples.samples(Page.class, 20, payloadSize),
+                Page.class, PageMongo.class);
+    }
+
+    @Benchmark
+    public Api mapApiMongoToApi() {
+        return graviteeMapper.map(apiMongo, Api.class);
+    }
+
+    @Benchmark
+    public ApiMongo mapApiToApiMongo() {
+        return graviteeMapper.map(api, ApiMongo.class);
+    }
+
+    @Benchmark
+    public Event mapEventMongoToEvent() {
+        return graviteeMapper.map(eventMongo, Event.class);
+    }
+
+    @Benchmark
+    public List<ApiKey> collection2listApiKeys() {
+        return graviteeMapper.collection2list(apiKeysMongo, ApiKeyMongo.class, ApiKey.class);
+    }
+
+    @Benchmark
+    public Set<Page> collection2setPages() {
+        return graviteeMapper.collection2set(pagesMongo, PageMongo.class, Page.class);
+    }
+}
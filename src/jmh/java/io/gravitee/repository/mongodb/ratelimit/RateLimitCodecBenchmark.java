@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the encoding and decoding of rate-limits, for each {@link RateLimitSchema}.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitCodecBenchmark {
+
+    @Param({"legacy", "compact"})
+    public String schema;
+
+    private RateLimitCodec codec;
+    private RateLimit rateLimit;
+    private byte[] bson;
+
+    @Setup
+    public void setUp() {
+        codec = new RateLimitCodec(RateLimitSchema.of(schema));
+
+        long now = System.currentTimeMillis();
+        rateLimit = new RateLimit("5d3b6a35-b1b8-4a0d-bb6a-35b1b88a0d8c:rl-0:policy-ratelimit:" +
+                "0a9ef3cc-2f4f-4bf6-9ef3-cc2f4f8bf6a1");
+        rateLimit.setCounter(42);
+        rateLimit.setLastRequest(now);
+        rateLimit.setResetTime(now + 60000);
+        rateLimit.setCreatedAt(now);
+        rateLimit.setUpdatedAt(now);
+        rateLimit.setAsync(true);
+
+        bson = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(128);
+        codec.encode(new BsonBinaryWriter(buffer), rateLimit, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public RateLimit decode() {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bson)), DecoderContext.builder().build());
+    }
+}
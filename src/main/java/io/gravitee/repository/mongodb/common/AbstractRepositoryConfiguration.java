@@ -16,6 +16,7 @@
 package io.gravitee.repository.mongodb.common;
 
 import io.gravitee.repository.mongodb.management.mapper.GraviteeDozerMapper;
+import io.gravitee.repository.mongodb.management.mapper.GraviteeGeneratedMapper;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import io.gravitee.repository.mongodb.management.transaction.NoTransactionManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +28,7 @@ import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.data.annotation.Persistent;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.transaction.support.AbstractPlatformTransactionManager;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
@@ -40,6 +42,11 @@ import java.util.Set;
  */
 public abstract class AbstractRepositoryConfiguration extends AbstractMongoConfiguration {
 
+    /**
+     * Name of the GridFS bucket holding the pictures of APIs and users.
+     */
+    public static final String PICTURE_BUCKET = "pictures";
+
     @Autowired
     private Environment environment;
 
@@ -55,9 +62,18 @@ public abstract class AbstractRepositoryConfiguration extends AbstractMongoConfi
 
     @Bean
     public GraviteeMapper graviteeMapper() {
+        if ("generated".equalsIgnoreCase(environment.getProperty("management.mongodb.mapper", "dozer"))) {
+            return new GraviteeGeneratedMapper();
+        }
+
         return new GraviteeDozerMapper();
     }
 
+    @Bean
+    public GridFsTemplate pictureGridFsTemplate() throws Exception {
+        return new GridFsTemplate(mongoDbFactory(), mappingMongoConverter(), PICTURE_BUCKET);
+    }
+
 
     protected Set<Class<?>> getInitialEntitySet() throws ClassNotFoundException {
 
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.common;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerSettings;
+import com.mongodb.connection.SocketSettings;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates a client for the callback-based asynchronous driver. Its settings are converted from the options read by
+ * {@link MongoFactory}, so that both drivers are configured from the same properties.
+ *
+ * @author GraviteeSource Team
+ */
+public class AsyncMongoFactory implements FactoryBean<MongoClient> {
+
+    @Autowired
+    private Environment environment;
+
+    private final String propertyPrefix;
+
+    public AsyncMongoFactory(String propertyPrefix) {
+        this.propertyPrefix = propertyPrefix;
+    }
+
+    @Override
+    public MongoClient getObject() throws Exception {
+        return MongoClients.create(settings());
+    }
+
+    MongoClientSettings settings() {
+        MongoFactory factory = new MongoFactory(propertyPrefix, environment);
+
+        MongoClientSettings.Builder settings = MongoClientSettings.builder();
+        ClusterSettings.Builder cluster = ClusterSettings.builder();
+        MongoClientOptions options;
+
+        String uri = factory.uri();
+        if (uri != null) {
+            // Options specified in the URI string override the ones defined by properties.
+            options = new MongoClientURI(uri, factory.builder()).getOptions();
+            ConnectionString connectionString = new ConnectionString(uri);
+            cluster.applyConnectionString(connectionString);
+            settings.credentialList(connectionString.getCredentialList());
+        } else {
+            options = factory.builder().build();
+            cluster.hosts(factory.seeds());
+            settings.credentialList(factory.credentials());
+        }
+
+        if (options.isSslEnabled()) {
+            // Without Netty, the asynchronous driver relies on AsynchronousSocketChannel, which does not support SSL
+            throw new IllegalStateException("SSL is not supported by the asynchronous MongoDB driver, set "
+                    + propertyPrefix + ".mongodb.driver to sync to connect with SSL");
+        }
+
+        cluster.description(options.getDescription())
+                .serverSelectionTimeout(options.getServerSelectionTimeout(), TimeUnit.MILLISECONDS)
+                .maxWaitQueueSize(maxWaitQueueSize(options));
+        if (options.getRequiredReplicaSetName() != null) {
+            cluster.requiredReplicaSetName(options.getRequiredReplicaSetName());
+        }
+
+        return settings
+                .applicationName(options.getApplicationName())
+                .readPreference(options.getReadPreference())
+                .writeConcern(options.getWriteConcern())
+                .readConcern(options.getReadConcern())
+                .clusterSettings(cluster.build())
+                .connectionPoolSettings(ConnectionPoolSettings.builder()
+                        .maxSize(options.getConnectionsPerHost())
+                        .minSize(options.getMinConnectionsPerHost())
+                        .maxWaitQueueSize(maxWaitQueueSize(options))
+                        .maxWaitTime(options.getMaxWaitTime(), TimeUnit.MILLISECONDS)
+                        .maxConnectionLifeTime(options.getMaxConnectionLifeTime(), TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(options.getMaxConnectionIdleTime(), TimeUnit.MILLISECONDS)
+                        .build())
+                .socketSettings(SocketSettings.builder()
+                        .connectTimeout(options.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                        .readTimeout(options.getSocketTimeout(), TimeUnit.MILLISECONDS)
+                        .keepAlive(options.isSocketKeepAlive())
+                        .build())
+                .heartbeatSocketSettings(SocketSettings.builder()
+                        .connectTimeout(options.getHeartbeatConnectTimeout(), TimeUnit.MILLISECONDS)
+                        .readTimeout(options.getHeartbeatSocketTimeout(), TimeUnit.MILLISECONDS)
+                        .keepAlive(options.isSocketKeepAlive())
+                        .build())
+                .serverSettings(ServerSettings.builder()
+                        .heartbeatFrequency(options.getHeartbeatFrequency(), TimeUnit.MILLISECONDS)
+                        .minHeartbeatFrequency(options.getMinHeartbeatFrequency(), TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+    }
+
+    private static int maxWaitQueueSize(MongoClientOptions options) {
+        return options.getConnectionsPerHost() * options.getThreadsAllowedToBlockForConnectionMultiplier();
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return MongoClient.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+}
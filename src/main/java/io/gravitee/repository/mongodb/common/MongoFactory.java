@@ -45,8 +45,16 @@ public class MongoFactory implements FactoryBean<Mongo> {
     public MongoFactory(String propertyPrefix) {
         this.propertyPrefix = propertyPrefix + ".mongodb.";
     }
-    
-    private MongoClientOptions.Builder builder() {
+
+    MongoFactory(String propertyPrefix, Environment environment) {
+        this(propertyPrefix);
+        this.environment = environment;
+    }
+
+    /**
+     * Returns the client options defined by properties.
+     */
+    MongoClientOptions.Builder builder() {
         MongoClientOptions.Builder builder = MongoClientOptions.builder();
 
         builder.writeConcern(WriteConcern.SAFE);
@@ -147,47 +155,67 @@ public class MongoFactory implements FactoryBean<Mongo> {
         MongoClientOptions.Builder builder = builder();
 
         // Trying to get the MongoClientURI if uri property is defined
-        String uri = readPropertyValue(propertyPrefix + "uri");
+        String uri = uri();
 
-        if (uri != null && ! uri.isEmpty()) {
+        if (uri != null) {
             // The builder can be configured with default options, which may be overridden by options specified in
             // the URI string.
             return new MongoClient(
                     new MongoClientURI(uri, builder));
         } else {
-            String username = readPropertyValue(propertyPrefix + "username");
-            String password = readPropertyValue(propertyPrefix + "password");
-
-            List<MongoCredential> credentials = null;
-            if (username != null || password != null) {
-                String authSource = readPropertyValue(propertyPrefix + "authSource", String.class, "gravitee");
-                credentials = Collections.singletonList(MongoCredential.createCredential(
-                        username, authSource, password.toCharArray()));
+            List<MongoCredential> credentials = credentials();
+            MongoClientOptions options = builder.build();
+            if (credentials.isEmpty()) {
+                return new MongoClient(seeds(), options);
             }
 
+            return new MongoClient(seeds(),
+                    credentials, options);
+        }
+    }
 
-            List<ServerAddress> seeds;
-            int serversCount = getServersCount();
+    /**
+     * Returns the connection string, or <code>null</code> if the servers are defined by properties.
+     */
+    String uri() {
+        String uri = readPropertyValue(propertyPrefix + "uri");
+        return (uri != null && ! uri.isEmpty()) ? uri : null;
+    }
 
-            if (serversCount == 0) {
-                String host = readPropertyValue(propertyPrefix + "host", String.class, "localhost");
-                int port = readPropertyValue(propertyPrefix + "port", int.class, 27017);
-                seeds = Collections.singletonList(new ServerAddress(host, port));
-            } else {
-                seeds = new ArrayList<>(serversCount);
-                for (int i = 0; i < serversCount; i++) {
-                    seeds.add(buildServerAddress(i));
-                }
-            }
+    /**
+     * Returns the servers defined by properties, used when there is no connection string.
+     */
+    List<ServerAddress> seeds() {
+        int serversCount = getServersCount();
 
-            MongoClientOptions options = builder.build();
-            if (credentials == null) {
-                return new MongoClient(seeds, options);
-            }
+        if (serversCount == 0) {
+            String host = readPropertyValue(propertyPrefix + "host", String.class, "localhost");
+            int port = readPropertyValue(propertyPrefix + "port", int.class, 27017);
+            return Collections.singletonList(new ServerAddress(host, port));
+        }
 
-            return new MongoClient(seeds,
-                    credentials, options);
+        List<ServerAddress> seeds = new ArrayList<>(serversCount);
+        for (int i = 0; i < serversCount; i++) {
+            seeds.add(buildServerAddress(i));
+        }
+
+        return seeds;
+    }
+
+    /**
+     * Returns the credentials defined by properties, used when there is no connection string.
+     */
+    List<MongoCredential> credentials() {
+        String username = readPropertyValue(propertyPrefix + "username");
+        String password = readPropertyValue(propertyPrefix + "password");
+
+        if (username == null && password == null) {
+            return Collections.emptyList();
         }
+
+        String authSource = readPropertyValue(propertyPrefix + "authSource", String.class, "gravitee");
+        return Collections.singletonList(MongoCredential.createCredential(
+                username, authSource, password.toCharArray()));
     }
 
     private int getServersCount() {
@@ -26,6 +26,8 @@ import io.gravitee.repository.mongodb.management.internal.model.ApiKeyMongo;
 import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -33,6 +35,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author GraviteeSource Team
@@ -46,6 +52,12 @@ public class MongoApiKeyRepository implements ApiKeyRepository {
 	@Autowired
 	private ApiKeyMongoRepository internalApiKeyRepo;
 
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private MongoReplaceUpdate replaceUpdate;
+
 	@Override
 	public ApiKey create(ApiKey apiKey) throws TechnicalException {
 		ApiKeyMongo apiKeyMongo = mapper.map(apiKey, ApiKeyMongo.class);
@@ -60,14 +72,17 @@ public class MongoApiKeyRepository implements ApiKeyRepository {
 			throw new IllegalStateException("ApiKey to update must have an key");
 		}
 
-		ApiKeyMongo apiKeyMongo = internalApiKeyRepo.findOne(apiKey.getKey());
+		final ApiKeyMongo apiKeyMongo = mapper.map(apiKey, ApiKeyMongo.class);
+		final Update update = replaceUpdate.of(apiKeyMongo);
+
+		final ApiKeyMongo apiKeyMongoUpdated = mongoTemplate.findAndModify(
+				query(where("_id").is(apiKey.getKey())), update, options().returnNew(true), ApiKeyMongo.class);
 
-		if (apiKeyMongo == null) {
+		if (apiKeyMongoUpdated == null) {
 			throw new IllegalStateException(String.format("No apiKey found with key [%s]", apiKey.getKey()));
 		}
 
-		apiKeyMongo = internalApiKeyRepo.save(mapper.map(apiKey, ApiKeyMongo.class));
-		return mapper.map(apiKeyMongo, ApiKey.class);
+		return mapper.map(apiKeyMongoUpdated, ApiKey.class);
 	}
 
 	@Override
@@ -23,14 +23,23 @@ import io.gravitee.repository.mongodb.management.internal.api.ApiMongoRepository
 import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com)
@@ -44,26 +53,54 @@ public class MongoApiRepository implements ApiRepository {
 
 	@Autowired
 	private GraviteeMapper mapper;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private MongoTextCompression textCompression;
+
+	@Autowired
+	private MongoCursorStreamer cursorStreamer;
+
+	@Autowired
+	private MongoPictureStore pictureStore;
 	
 	@Override
 	public Optional<Api> findById(String apiId) throws TechnicalException {
 		ApiMongo apiMongo =  internalApiRepo.findOne(apiId);
-		return Optional.ofNullable(mapApi(apiMongo));
+		return Optional.ofNullable(loadPicture(mapApi(apiMongo), apiMongo));
 	}
 
 	@Override
 	public Set<Api> findByVisibility(Visibility visibility) throws TechnicalException {
-		return mapApis(internalApiRepo.findByVisibility(visibility.name()));
+		return mapApisWithPictures(internalApiRepo.findByVisibility(visibility.name()));
 	}
 
 	@Override
 	public Set<Api> findByIds(List<String> ids) throws TechnicalException {
-		return mapApis(internalApiRepo.findByIds(ids));
+		return mapApisWithPictures(internalApiRepo.findByIds(ids));
 	}
 
 	@Override
 	public Set<Api> findByGroups(List<String> groupIds) throws TechnicalException {
-		return mapApis(internalApiRepo.findByGroups(groupIds));
+		return mapApisWithPictures(internalApiRepo.findByGroups(groupIds));
+	}
+
+	/**
+	 * Summary reads, for API listings: the definition and the picture are not fetched and are left empty in the
+	 * returned APIs.
+	 */
+	public Set<Api> findSummariesByVisibility(Visibility visibility) throws TechnicalException {
+		return mapApis(internalApiRepo.findSummariesByVisibility(visibility.name()));
+	}
+
+	public Set<Api> findSummariesByIds(List<String> ids) throws TechnicalException {
+		return mapApis(internalApiRepo.findSummariesByIds(ids));
+	}
+
+	public Set<Api> findSummariesByGroups(List<String> groupIds) throws TechnicalException {
+		return mapApis(internalApiRepo.findSummariesByGroups(groupIds));
 	}
 
 	@Override
@@ -71,12 +108,36 @@ public class MongoApiRepository implements ApiRepository {
 		List<ApiMongo> apis = internalApiRepo.findAll();
 		return mapApis(apis);
 	}
+
+	/**
+	 * Same as {@link #findAll()}, but APIs are read through a cursor and mapped one at a time. The iterator has to be
+	 * closed if it is not consumed until the end.
+	 */
+	public CloseableIterator<Api> streamAll() {
+		final Query query = new Query();
+		query.fields().exclude("picture");
+		return cursorStreamer.stream(query, ApiMongo.class, this::mapApi);
+	}
 	
 	@Override
 	public Api create(Api api) throws TechnicalException {
 		ApiMongo apiMongo = mapApi(api);
-		ApiMongo apiMongoCreated = internalApiRepo.insert(apiMongo);
-		return mapApi(apiMongoCreated);
+		MongoPictureStore.StoredPicture picture = null;
+		if (pictureStore.isGridFs() && api.getPicture() != null) {
+			picture = pictureStore.store(pictureCollection(), api.getId(), api.getPicture());
+			apiMongo.setPicture(null);
+			apiMongo.setPictureId(picture.id);
+			apiMongo.setPictureHash(picture.hash);
+		}
+
+		ApiMongo apiMongoCreated;
+		try {
+			apiMongoCreated = internalApiRepo.insert(apiMongo);
+		} catch (RuntimeException ex) {
+			pictureStore.discard(picture);
+			throw ex;
+		}
+		return withPicture(mapApi(apiMongoCreated), api.getPicture());
 	}
 
 	@Override
@@ -85,32 +146,101 @@ public class MongoApiRepository implements ApiRepository {
 			throw new IllegalStateException("Api to update must have an id");
 		}
 
-		final ApiMongo apiMongo = internalApiRepo.findOne(api.getId());
-		if (apiMongo == null) {
+		final Update update = new Update()
+				.set("name", api.getName())
+				.set("description", api.getDescription())
+				.set("createdAt", api.getCreatedAt())
+				.set("updatedAt", api.getUpdatedAt())
+				.set("lifecycleState", api.getLifecycleState().toString())
+				.set("definition", textCompression.compress(api.getDefinition()))
+				.set("visibility", api.getVisibility().toString())
+				.set("version", api.getVersion())
+				.set("deployedAt", api.getDeployedAt())
+				.set("groups", api.getGroups())
+				.set("views", api.getViews())
+				.set("labels", api.getLabels());
+
+		MongoPictureStore.StoredPicture picture = null;
+		if (! pictureStore.isGridFs()) {
+			update.set("picture", api.getPicture()).unset("pictureId").unset("pictureHash");
+		} else {
+			if (api.getPicture() != null) {
+				picture = pictureStore.store(pictureCollection(), api.getId(), api.getPicture());
+			}
+			update.set("picture", null)
+					.set("pictureId", (picture != null) ? picture.id : null)
+					.set("pictureHash", (picture != null) ? picture.hash : null);
+		}
+
+		// Only the updated fields are sent, and the document is read back in the same round trip
+		final ApiMongo apiMongoUpdated;
+		try {
+			apiMongoUpdated = mongoTemplate.findAndModify(
+					query(where("_id").is(api.getId())), update, options().returnNew(true), ApiMongo.class);
+		} catch (RuntimeException ex) {
+			pictureStore.discard(picture);
+			throw ex;
+		}
+		if (apiMongoUpdated == null) {
+			if (picture != null) {
+				pictureStore.delete(pictureCollection(), api.getId());
+			}
 			throw new IllegalStateException(String.format("No api found with id [%s]", api.getId()));
 		}
 
-		apiMongo.setName(api.getName());
-		apiMongo.setDescription(api.getDescription());
-		apiMongo.setCreatedAt(api.getCreatedAt());
-		apiMongo.setUpdatedAt(api.getUpdatedAt());
-		apiMongo.setLifecycleState(api.getLifecycleState().toString());
-		apiMongo.setDefinition(api.getDefinition());
-		apiMongo.setVisibility(api.getVisibility().toString());
-		apiMongo.setVersion(api.getVersion());
-		apiMongo.setDeployedAt(api.getDeployedAt());
-		apiMongo.setPicture(api.getPicture());
-        apiMongo.setGroups(api.getGroups());
-		apiMongo.setViews(api.getViews());
-		apiMongo.setLabels(api.getLabels());
+		if (pictureStore.isGridFs()) {
+			if (picture != null) {
+				pictureStore.deleteOthers(pictureCollection(), api.getId(), picture.id);
+			} else {
+				pictureStore.delete(pictureCollection(), api.getId());
+			}
+		}
 
-		ApiMongo apiMongoUpdated = internalApiRepo.save(apiMongo);
-		return mapApi(apiMongoUpdated);
+		return withPicture(mapApi(apiMongoUpdated), api.getPicture());
 	}
 
 	@Override
 	public void delete(String apiId) throws TechnicalException {
 		internalApiRepo.delete(apiId);
+		if (pictureStore.isGridFs()) {
+			pictureStore.delete(pictureCollection(), apiId);
+		}
+	}
+
+	private String pictureCollection() {
+		return mongoTemplate.getCollectionName(ApiMongo.class);
+	}
+
+	/**
+	 * Fetches a picture stored in GridFS, for the reads which return pictures. {@link #findAll()} and the summary
+	 * reads do not.
+	 */
+	private Api loadPicture(Api api, ApiMongo apiMongo) {
+		if (api != null && api.getPicture() == null && apiMongo.getPictureId() != null) {
+			api.setPicture(pictureStore.load(apiMongo.getPictureId()));
+		}
+		return api;
+	}
+
+	private Api withPicture(Api api, String picture) {
+		if (api != null && api.getPicture() == null) {
+			api.setPicture(picture);
+		}
+		return api;
+	}
+
+	/**
+	 * Maps listed APIs with the pictures stored in GridFS, fetched all at once.
+	 */
+	private Set<Api> mapApisWithPictures(Collection<ApiMongo> apis) {
+		final Map<String, String> pictures = pictureStore.loadAll(apis.stream()
+				.filter(apiMongo -> apiMongo.getPicture() == null && apiMongo.getPictureId() != null)
+				.map(ApiMongo::getPictureId)
+				.collect(Collectors.toList()));
+
+		return apis.stream()
+				.map(apiMongo -> withPicture(mapApi(apiMongo), pictures.get(apiMongo.getPictureId())))
+				.collect(Collectors.toSet());
 	}
 
 	private Set<Api> mapApis(Collection<ApiMongo> apis) {
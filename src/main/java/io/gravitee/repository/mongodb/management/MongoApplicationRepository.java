@@ -23,11 +23,19 @@ import io.gravitee.repository.mongodb.management.internal.application.Applicatio
 import io.gravitee.repository.mongodb.management.internal.model.ApplicationMongo;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com)
@@ -42,6 +50,12 @@ public class MongoApplicationRepository implements ApplicationRepository {
 	@Autowired
 	private GraviteeMapper mapper;
 
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private MongoCursorStreamer cursorStreamer;
+
 	@Override
 	public Set<Application> findAll(ApplicationStatus... statuses) throws TechnicalException {
 		List<ApplicationMongo> applications;
@@ -53,6 +67,18 @@ public class MongoApplicationRepository implements ApplicationRepository {
 		return mapApplications(applications);
 	}
 
+	/**
+	 * Same as {@link #findAll(ApplicationStatus...)}, but applications are read through a cursor and mapped one at a
+	 * time. The iterator has to be closed if it is not consumed until the end.
+	 */
+	public CloseableIterator<Application> streamAll(ApplicationStatus... statuses) {
+		final Query query = new Query();
+		if (statuses != null && statuses.length > 0) {
+			query.addCriteria(where("status").in(Arrays.stream(statuses).map(Enum::name).collect(Collectors.toList())));
+		}
+		return cursorStreamer.stream(query, ApplicationMongo.class, this::mapApplication);
+	}
+
 	@Override
 	public Application create(Application application) throws TechnicalException {
 		ApplicationMongo applicationMongo = mapApplication(application);
@@ -66,20 +92,21 @@ public class MongoApplicationRepository implements ApplicationRepository {
 			throw new IllegalStateException("Application to update must have an id");
 		}
 
-		final ApplicationMongo applicationMongo = internalApplicationRepo.findOne(application.getId());
-		if (applicationMongo == null) {
+		final Update update = new Update()
+				.set("name", application.getName())
+				.set("description", application.getDescription())
+				.set("createdAt", application.getCreatedAt())
+				.set("updatedAt", application.getUpdatedAt())
+				.set("type", application.getType())
+				.set("groups", application.getGroups())
+				.set("status", application.getStatus().toString());
+
+		final ApplicationMongo applicationMongoUpdated = mongoTemplate.findAndModify(
+				query(where("_id").is(application.getId())), update, options().returnNew(true), ApplicationMongo.class);
+		if (applicationMongoUpdated == null) {
 			throw new IllegalStateException(String.format("No application found with id [%s]", application.getId()));
 		}
-		
-		applicationMongo.setName(application.getName());
-		applicationMongo.setDescription(application.getDescription());
-		applicationMongo.setCreatedAt(application.getCreatedAt());
-		applicationMongo.setUpdatedAt(application.getUpdatedAt());
-		applicationMongo.setType(application.getType());
-		applicationMongo.setGroups(application.getGroups());
-		applicationMongo.setStatus(application.getStatus().toString());
-
-		ApplicationMongo applicationMongoUpdated = internalApplicationRepo.save(applicationMongo);
+
 		return mapApplication(applicationMongoUpdated);
 	}
 
@@ -25,14 +25,18 @@ import io.gravitee.repository.management.model.Audit;
 import io.gravitee.repository.management.model.View;
 import io.gravitee.repository.mongodb.management.internal.api.ViewMongoRepository;
 import io.gravitee.repository.mongodb.management.internal.audit.AuditMongoRepository;
+import io.gravitee.repository.mongodb.management.internal.audit.AuditPartitions;
 import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
 import io.gravitee.repository.mongodb.management.internal.model.ViewMongo;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
+import io.gravitee.repository.mongodb.management.search.SearchPage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -53,19 +57,56 @@ public class MongoAuditRepository implements AuditRepository {
     @Autowired
     private GraviteeMapper mapper;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AuditPartitions partitions;
+
+    @Autowired
+    private MongoAuditWriter auditWriter;
+
     @Override
     public Page<Audit> search(AuditCriteria filter, Pageable pageable) {
         Page<AuditMongo> auditsMongo = internalAuditRepo.search(filter, pageable);
 
         List<Audit> content = mapper.collection2list(auditsMongo.getContent(), AuditMongo.class, Audit.class);
-        return new Page<>(content, auditsMongo.getPageNumber(), (int) auditsMongo.getPageElements(), auditsMongo.getTotalElements());
+        return SearchPage.withContent(auditsMongo, content);
+    }
+
+    /**
+     * Keyset search, for exports: returns the next audits matching the filter, from the most recent, after the last
+     * audit already read. Unlike {@link #search(AuditCriteria, Pageable)}, the cost of a page does not depend on its
+     * position.
+     *
+     * @param filter The filter of the audits.
+     * @param createdAt The creation date of the last audit read, or <code>0</code> to start from the most recent.
+     * @param id The id of the last audit read, or <code>null</code> to include all the audits created at
+     *           <code>createdAt</code>.
+     * @param limit The maximum number of audits to return.
+     */
+    public List<Audit> searchAfter(AuditCriteria filter, long createdAt, String id, int limit) {
+        List<AuditMongo> auditsMongo = internalAuditRepo.searchAfter(
+                filter, (createdAt != 0) ? new Date(createdAt) : null, id, limit);
+
+        return mapper.collection2list(auditsMongo, AuditMongo.class, Audit.class);
     }
 
     @Override
     public Optional<Audit> findById(String id) throws TechnicalException {
         LOGGER.debug("Find view by ID [{}]", id);
 
-        final AuditMongo audit = internalAuditRepo.findOne(id);
+        AuditMongo audit = null;
+        if (partitions.isEnabled()) {
+            for (String collection : partitions.collectionsFor(0, 0)) {
+                audit = mongoTemplate.findById(id, AuditMongo.class, collection);
+                if (audit != null) {
+                    break;
+                }
+            }
+        } else {
+            audit = internalAuditRepo.findOne(id);
+        }
 
         LOGGER.debug("Find view by ID [{}] - Done", id);
         return Optional.ofNullable(mapper.map(audit, Audit.class));
@@ -76,7 +117,20 @@ public class MongoAuditRepository implements AuditRepository {
         LOGGER.debug("Create audit {}", audit.toString());
 
         AuditMongo auditMongo = mapper.map(audit, AuditMongo.class);
-        AuditMongo createdAuditMongo = internalAuditRepo.insert(auditMongo);
+
+        // Queued audits are written later, the given audit is returned as it is
+        if (auditWriter.isEnabled() && auditWriter.offer(auditMongo)) {
+            LOGGER.debug("Create audit [{}] - Queued", audit.getId());
+            return audit;
+        }
+
+        AuditMongo createdAuditMongo;
+        if (partitions.isEnabled()) {
+            mongoTemplate.insert(auditMongo, partitions.collectionFor(auditMongo.getCreatedAt()));
+            createdAuditMongo = auditMongo;
+        } else {
+            createdAuditMongo = internalAuditRepo.insert(auditMongo);
+        }
 
         Audit res = mapper.map(createdAuditMongo, Audit.class);
 
@@ -0,0 +1,452 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.audit.AuditPartitions;
+import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind sink for audits, when <code>management.mongodb.audit.writeBehind.enabled</code> is <code>true</code>.
+ *
+ * Audits are queued and written by batches with an unordered bulk insert, once a batch is full or the flush interval
+ * elapsed. When the queue is full, the overflow policy applies:
+ * <ul>
+ *     <li><code>block</code>: the caller waits for room up to <code>blockTimeout</code>, then writes the audit by
+ *     itself</li>
+ *     <li><code>sync</code>: the caller writes the audit by itself</li>
+ *     <li><code>drop</code>: the audit is dropped</li>
+ * </ul>
+ *
+ * When the database fails, the writer keeps its batch and retries it, waiting from <code>retryBackoff</code> doubling up
+ * to <code>maxRetryBackoff</code> between attempts. The queue is not drained meanwhile, so that producers are held back
+ * by the overflow policy once it is full. On shutdown, the remaining audits are retried up to
+ * <code>shutdownTimeout</code>, then reported as failed, and audits are handed back to their caller.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+public class MongoAuditWriter {
+
+    private final Logger logger = LoggerFactory.getLogger(MongoAuditWriter.class);
+
+    /**
+     * Error code of a duplicate key, i.e. an audit already written by a previous attempt.
+     */
+    private static final int DUPLICATE_KEY = 11000;
+
+    enum OverflowPolicy {
+        BLOCK, SYNC, DROP
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AuditPartitions partitions;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private Environment environment;
+
+    private boolean enabled;
+
+    private long flushInterval;
+
+    private int maxBatchSize;
+
+    private OverflowPolicy overflowPolicy;
+
+    private long blockTimeout;
+
+    private long retryBackoff;
+
+    private long maxRetryBackoff;
+
+    private long shutdownTimeout;
+
+    private BlockingQueue<AuditMongo> queue;
+
+    /**
+     * Audits taken from the queue by the writing thread and not written when it stopped.
+     */
+    private final List<AuditMongo> pending = Collections.synchronizedList(new ArrayList<>());
+
+    private ExecutorService executor;
+
+    private volatile boolean running;
+
+    private volatile boolean stopped;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        enabled = environment.getProperty("management.mongodb.audit.writeBehind.enabled", Boolean.class, false);
+        if (!enabled) {
+            return;
+        }
+
+        configure();
+
+        running = true;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gio.mongo-audit-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::run);
+    }
+
+    void configure() {
+        flushInterval = environment.getProperty("management.mongodb.audit.writeBehind.flushInterval", Long.class, 1000L);
+        maxBatchSize = environment.getProperty("management.mongodb.audit.writeBehind.maxBatchSize", Integer.class, 500);
+        overflowPolicy = OverflowPolicy.valueOf(
+                environment.getProperty("management.mongodb.audit.writeBehind.overflow", "block").toUpperCase());
+        blockTimeout = environment.getProperty("management.mongodb.audit.writeBehind.blockTimeout", Long.class, 5000L);
+        retryBackoff = environment.getProperty("management.mongodb.audit.writeBehind.retryBackoff", Long.class, 500L);
+        maxRetryBackoff = environment.getProperty("management.mongodb.audit.writeBehind.maxRetryBackoff", Long.class,
+                30000L);
+        shutdownTimeout = environment.getProperty("management.mongodb.audit.writeBehind.shutdownTimeout", Long.class,
+                10000L);
+        queue = new ArrayBlockingQueue<>(
+                environment.getProperty("management.mongodb.audit.writeBehind.queueSize", Integer.class, 10000));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+
+        running = false;
+        stopped = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Write what is remaining before leaving, as long as the database recovers before the shutdown timeout
+        final List<AuditMongo> remaining = new ArrayList<>(pending);
+        pending.clear();
+        queue.drainTo(remaining);
+
+        final long deadline = System.currentTimeMillis() + shutdownTimeout;
+        long backoff = 0;
+        int from = 0;
+        while (from < remaining.size()) {
+            final List<AuditMongo> batch = remaining.subList(from, Math.min(from + maxBatchSize, remaining.size()));
+            if (tryFlush(batch)) {
+                from += batch.size();
+                backoff = 0;
+                continue;
+            }
+
+            backoff = nextBackoff(backoff);
+            if (System.currentTimeMillis() + backoff > deadline || !sleep(backoff)) {
+                final int lost = remaining.size() - from;
+                logger.error("Unable to write the {} remaining audits within {} ms, audits not written: {}", lost,
+                        shutdownTimeout, remaining.subList(from, remaining.size()).stream()
+                                .map(AuditMongo::getId).collect(Collectors.toList()));
+                failed.add(lost);
+                return;
+            }
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the given audit, applying the overflow policy if the queue is full.
+     *
+     * @return <code>false</code> if the audit is neither queued nor dropped, in which case the caller has to write it
+     * by itself.
+     */
+    boolean offer(AuditMongo audit) {
+        // Once stopped, nothing writes the queue anymore
+        if (stopped) {
+            return false;
+        }
+
+        if (queue.offer(audit)) {
+            return true;
+        }
+
+        overflow.increment();
+        switch (overflowPolicy) {
+            case DROP:
+                dropped.increment();
+                logger.warn("Audit queue is full, audit {} is dropped", audit.getId());
+                return true;
+            case BLOCK:
+                try {
+                    blocked.increment();
+                    if (queue.offer(audit, blockTimeout, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void run() {
+        final List<AuditMongo> batch = new ArrayList<>(maxBatchSize);
+        long backoff = 0;
+
+        while (running) {
+            // A batch which could not be written is retried as is, producers being held back by the full queue
+            if (batch.isEmpty()) {
+                try {
+                    if (!collect(batch)) {
+                        continue;
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            // The database is given some time to recover before the batch is retried
+            if (tryFlush(batch)) {
+                batch.clear();
+                backoff = 0;
+            } else {
+                backoff = nextBackoff(backoff);
+                if (!sleep(backoff)) {
+                    break;
+                }
+            }
+        }
+
+        // Audits already taken from the queue are written by stop()
+        pending.addAll(batch);
+    }
+
+    /**
+     * Fills the given batch, once full or once the flush interval elapsed since its first audit.
+     *
+     * @return <code>false</code> if no audit has been queued during the flush interval.
+     */
+    private boolean collect(List<AuditMongo> batch) throws InterruptedException {
+        AuditMongo audit = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (audit == null) {
+            return false;
+        }
+        batch.add(audit);
+
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while (batch.size() < maxBatchSize && running) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            audit = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (audit == null) {
+                break;
+            }
+            batch.add(audit);
+        }
+        return true;
+    }
+
+    private boolean tryFlush(List<AuditMongo> batch) {
+        try {
+            return flush(batch);
+        } catch (Exception ex) {
+            logger.error("An error occurs while writing {} audits", batch.size(), ex);
+            return false;
+        }
+    }
+
+    private long nextBackoff(long backoff) {
+        return (backoff == 0) ? retryBackoff : Math.min(backoff * 2, maxRetryBackoff);
+    }
+
+    /**
+     * @return <code>false</code> if interrupted.
+     */
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the database failed, the audits having then to be written again.
+     */
+    boolean flush(List<AuditMongo> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        final long start = System.currentTimeMillis();
+
+        // Partitions are written separately
+        final Map<String, List<AuditMongo>> byCollection = new LinkedHashMap<>();
+        for (AuditMongo audit : batch) {
+            byCollection.computeIfAbsent(collectionFor(audit), name -> new ArrayList<>()).add(audit);
+        }
+
+        boolean inserted = true;
+        for (Map.Entry<String, List<AuditMongo>> audits : byCollection.entrySet()) {
+            inserted &= insert(audits.getKey(), audits.getValue());
+        }
+
+        final long latency = System.currentTimeMillis() - start;
+        lastFlushLatency.set(latency);
+        maxFlushLatency.accumulateAndGet(latency, Math::max);
+        flushes.increment();
+
+        logger.debug("Audit writer flushed {} audits in {} ms (queued: {}, dropped: {}, failed: {})",
+                batch.size(), latency, queue.size(), dropped.sum(), failed.sum());
+        return inserted;
+    }
+
+    /**
+     * @return <code>false</code> if the database failed, the audits having then to be written again.
+     */
+    private boolean insert(String collection, List<AuditMongo> audits) {
+        // Same events as MongoTemplate, so that listeners see audits written by batches
+        final List<DBObject> documents = new ArrayList<>(audits.size());
+        for (AuditMongo audit : audits) {
+            eventPublisher.publishEvent(new BeforeConvertEvent<>(audit));
+            DBObject document = new BasicDBObject();
+            mongoTemplate.getConverter().write(audit, document);
+            eventPublisher.publishEvent(new BeforeSaveEvent<>(audit, document));
+            documents.add(document);
+        }
+
+        final Set<Integer> notWritten = new HashSet<>();
+        try {
+            bulkInsert(collection, documents);
+            written.add(audits.size());
+        } catch (BulkWriteException bwe) {
+            int errors = 0;
+            for (BulkWriteError error : bwe.getWriteErrors()) {
+                notWritten.add(error.getIndex());
+                if (error.getCode() != DUPLICATE_KEY) {
+                    errors++;
+                    logger.error("Unable to write audit {}: {}", audits.get(error.getIndex()).getId(), error.getMessage());
+                }
+            }
+            failed.add(errors);
+            written.add(audits.size() - notWritten.size());
+        } catch (Exception ex) {
+            logger.error("Unable to write {} audits, they will be retried", audits.size(), ex);
+            return false;
+        }
+
+        for (int i = 0; i < audits.size(); i++) {
+            if (!notWritten.contains(i)) {
+                eventPublisher.publishEvent(new AfterSaveEvent<>(audits.get(i), documents.get(i)));
+            }
+        }
+        return true;
+    }
+
+    void bulkInsert(String collection, List<DBObject> documents) {
+        final BulkWriteOperation bulk = mongoTemplate.getCollection(collection).initializeUnorderedBulkOperation();
+        documents.forEach(bulk::insert);
+        bulk.execute();
+    }
+
+    private String collectionFor(AuditMongo audit) {
+        return partitions.isEnabled() ?
+                partitions.collectionFor(audit.getCreatedAt()) : mongoTemplate.getCollectionName(AuditMongo.class);
+    }
+
+    public int getQueueDepth() {
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflow.sum();
+    }
+
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getLastFlushLatency() {
+        return lastFlushLatency.get();
+    }
+
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+}
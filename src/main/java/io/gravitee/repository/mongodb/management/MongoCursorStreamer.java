@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Function;
+
+/**
+ * Iterates over the result of a query through a MongoDB cursor, documents being fetched by batches and mapped one at
+ * a time, so that the whole collection is never held in memory.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoCursorStreamer {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private int batchSize;
+
+    @PostConstruct
+    public void init() {
+        batchSize = environment.getProperty("management.mongodb.stream.batchSize", Integer.class, 500);
+    }
+
+    /**
+     * The fields, the sort, the skip and the limit of the query are applied. The returned iterator has to be closed
+     * by callers which stop before the end, to release the cursor.
+     */
+    <S, T> CloseableIterator<T> stream(Query query, Class<S> entityClass, Function<S, T> mapper) {
+        final MongoConverter converter = mongoTemplate.getConverter();
+        final MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(entityClass);
+        final QueryMapper queryMapper = new QueryMapper(converter);
+
+        final DBObject mappedQuery = queryMapper.getMappedObject(query.getQueryObject(), entity);
+        final DBObject mappedFields = (query.getFieldsObject() == null) ? null :
+                queryMapper.getMappedFields(query.getFieldsObject(), entity);
+
+        final DBCursor cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass))
+                .find(mappedQuery, mappedFields)
+                .batchSize(batchSize);
+
+        if (query.getSortObject() != null) {
+            cursor.sort(queryMapper.getMappedSort(query.getSortObject(), entity));
+        }
+        if (query.getSkip() > 0) {
+            cursor.skip(query.getSkip());
+        }
+        if (query.getLimit() > 0) {
+            cursor.limit(query.getLimit());
+        }
+
+        return new CloseableIterator<T>() {
+
+            @Override
+            public boolean hasNext() {
+                if (cursor.hasNext()) {
+                    return true;
+                }
+
+                cursor.close();
+                return false;
+            }
+
+            @Override
+            public T next() {
+                // Same as MongoTemplate, so that listeners see documents read through a cursor
+                final DBObject dbo = cursor.next();
+                eventPublisher.publishEvent(new AfterLoadEvent<>(dbo, entityClass));
+                return mapper.apply(converter.read(entityClass, dbo));
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.mongodb.common.ContentHash;
+import io.gravitee.repository.mongodb.management.internal.model.EventPayloadMongo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stores each distinct event payload once, in the <code>event_payloads</code> collection, when
+ * <code>management.mongodb.event.payload.storage</code> is <code>dedup</code>.
+ *
+ * Payloads are keyed by their hash and count the events referencing them. A payload is removed once no event
+ * references it anymore.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoEventPayloadStore {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoTextCompression textCompression;
+
+    @Autowired
+    private Environment environment;
+
+    private boolean dedup;
+
+    @PostConstruct
+    public void init() {
+        dedup = "dedup".equalsIgnoreCase(environment.getProperty("management.mongodb.event.payload.storage", "inline"));
+    }
+
+    boolean isDedup() {
+        return dedup;
+    }
+
+    /**
+     * Adds a reference to a payload, storing it if it is not already, and returns its hash.
+     */
+    String acquire(String payload) {
+        final String hash = ContentHash.sha256(payload);
+        final Update update = new Update()
+                .inc("references", 1)
+                .setOnInsert("payload", textCompression.compress(payload))
+                .setOnInsert("createdAt", new Date());
+
+        try {
+            mongoTemplate.upsert(query(where("_id").is(hash)), update, EventPayloadMongo.class);
+        } catch (DuplicateKeyException dke) {
+            // The same payload has been inserted concurrently, it is now there to be updated
+            mongoTemplate.upsert(query(where("_id").is(hash)), update, EventPayloadMongo.class);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Removes a reference to a payload, and the payload itself if it was the last one.
+     */
+    void release(String hash) {
+        mongoTemplate.updateFirst(query(where("_id").is(hash)), new Update().inc("references", -1),
+                EventPayloadMongo.class);
+        mongoTemplate.remove(query(where("_id").is(hash).and("references").lte(0)), EventPayloadMongo.class);
+    }
+
+    /**
+     * Returns the payloads of the given hashes, in a single query.
+     */
+    Map<String, String> load(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> payloads = new HashMap<>(hashes.size());
+        mongoTemplate.find(query(where("_id").in(hashes)), EventPayloadMongo.class)
+                .forEach(payload -> payloads.put(payload.getHash(), payload.getPayload()));
+        return payloads;
+    }
+}
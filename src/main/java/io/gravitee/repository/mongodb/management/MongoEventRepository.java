@@ -25,13 +25,30 @@ import io.gravitee.repository.management.model.EventType;
 import io.gravitee.repository.mongodb.management.internal.event.EventMongoRepository;
 import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
+import io.gravitee.repository.mongodb.management.search.SearchPage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 /**
  * @author Titouan COMPIEGNE (titouan.compiegne at graviteesource.com)
@@ -48,11 +65,34 @@ public class MongoEventRepository implements EventRepository {
     @Autowired
     private GraviteeMapper mapper;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoTextCompression textCompression;
+
+    @Autowired
+    private MongoEventPayloadStore payloadStore;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        // Used by the incremental feed, to resume from an (updatedAt, _id) position, built in the background not to
+        // lock the collection at startup
+        mongoTemplate.indexOps(EventMongo.class).ensureIndex(new Index()
+                .on("updatedAt", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .named("updatedAt_1__id_1")
+                .background());
+    }
+
     @Override
     public Optional<Event> findById(String id) throws TechnicalException {
         logger.debug("Find event by ID [{}]", id);
 
         EventMongo event = internalEventRepo.findOne(id);
+        if (event != null) {
+            resolvePayloads(Collections.singletonList(event));
+        }
         Event res = mapEvent(event);
 
         logger.debug("Find event by ID [{}] - Done", id);
@@ -64,9 +104,23 @@ public class MongoEventRepository implements EventRepository {
         logger.debug("Create event [{}]", event.getId());
 
         EventMongo eventMongo = mapEvent(event);
-        EventMongo createdEventMongo = internalEventRepo.insert(eventMongo);
+        if (payloadStore.isDedup() && event.getPayload() != null) {
+            eventMongo.setPayloadHash(payloadStore.acquire(event.getPayload()));
+            eventMongo.setPayload(null);
+        }
+        EventMongo createdEventMongo;
+        try {
+            createdEventMongo = internalEventRepo.insert(eventMongo);
+        } catch (RuntimeException ex) {
+            // The event does not reference the payload acquired for it
+            if (eventMongo.getPayloadHash() != null) {
+                payloadStore.release(eventMongo.getPayloadHash());
+            }
+            throw ex;
+        }
 
         Event res = mapEvent(createdEventMongo);
+        res.setPayload(event.getPayload());
 
         logger.debug("Create event [{}] - Done", event.getId());
 
@@ -79,30 +133,65 @@ public class MongoEventRepository implements EventRepository {
             throw new IllegalStateException("Event to update must have an id");
         }
 
-        final EventMongo eventMongo = internalEventRepo.findOne(event.getId());
-        if (eventMongo == null) {
-            throw new IllegalStateException(String.format("No event found with id [%s]", event.getId()));
+        final Update update = new Update()
+                .set("properties", event.getProperties())
+                .set("type", event.getType().toString())
+                .set("parentId", event.getParentId())
+                .set("createdAt", event.getUpdatedAt())
+                .set("updatedAt", event.getUpdatedAt());
+
+        final String payloadHash;
+        if (payloadStore.isDedup()) {
+            payloadHash = (event.getPayload() != null) ? payloadStore.acquire(event.getPayload()) : null;
+            update.set("payload", null).set("payloadHash", payloadHash);
+        } else {
+            payloadHash = null;
+            update.set("payload", textCompression.compress(event.getPayload())).unset("payloadHash");
         }
 
+        // Only the hash of the previous document is read, to release its payload whatever the current storage
+        final Query query = query(where("_id").is(event.getId()));
+        query.fields().include("payloadHash");
+
+        final EventMongo previousEventMongo;
         try {
-            eventMongo.setProperties(event.getProperties());
-            eventMongo.setType(event.getType().toString());
-            eventMongo.setPayload(event.getPayload());
-            eventMongo.setParentId(event.getParentId());
-            eventMongo.setCreatedAt(event.getUpdatedAt());
-            eventMongo.setUpdatedAt(event.getUpdatedAt());
-            EventMongo eventMongoUpdated = internalEventRepo.save(eventMongo);
-            return mapEvent(eventMongoUpdated);
+            previousEventMongo = mongoTemplate.findAndModify(query, update, options().returnNew(false),
+                    EventMongo.class);
         } catch (Exception e) {
             logger.error("An error occured when updating event", e);
+            if (payloadHash != null) {
+                payloadStore.release(payloadHash);
+            }
             throw new TechnicalException("An error occured when updating event");
         }
+
+        if (previousEventMongo == null) {
+            if (payloadHash != null) {
+                payloadStore.release(payloadHash);
+            }
+            throw new IllegalStateException(String.format("No event found with id [%s]", event.getId()));
+        }
+
+        if (previousEventMongo.getPayloadHash() != null) {
+            payloadStore.release(previousEventMongo.getPayloadHash());
+        }
+
+        // Every field is updated, so the updated event is the given one, created at its update date
+        final Event updatedEvent = mapEvent(mapEvent(event));
+        updatedEvent.setCreatedAt(event.getUpdatedAt());
+        return updatedEvent;
     }
 
     @Override
     public void delete(String id) throws TechnicalException {
         try {
-            internalEventRepo.delete(id);
+            final Query query = query(where("_id").is(id));
+            query.fields().include("payloadHash");
+
+            final EventMongo eventMongo = mongoTemplate.findAndRemove(query, EventMongo.class);
+            if (eventMongo != null && eventMongo.getPayloadHash() != null) {
+                payloadStore.release(eventMongo.getPayloadHash());
+            }
         } catch (Exception e) {
             logger.error("An error occured when deleting event [{}]", id, e);
             throw new TechnicalException("An error occured when deleting event");
@@ -112,18 +201,93 @@ public class MongoEventRepository implements EventRepository {
     @Override
     public Page<Event> search(EventCriteria filter, Pageable pageable) {
         Page<EventMongo> eventsMongo = internalEventRepo.search(filter, pageable);
+        resolvePayloads(eventsMongo.getContent());
 
         List<Event> content = mapper.collection2list(eventsMongo.getContent(), EventMongo.class, Event.class);
-        return new Page<>(content, eventsMongo.getPageNumber(), (int) eventsMongo.getPageElements(), eventsMongo.getTotalElements());
+        return SearchPage.withContent(eventsMongo, content);
     }
 
     @Override
     public List<Event> search(EventCriteria filter) {
         Page<EventMongo> eventsMongo = internalEventRepo.search(filter, null);
+        resolvePayloads(eventsMongo.getContent());
 
         return mapper.collection2list(eventsMongo.getContent(), EventMongo.class, Event.class);
     }
 
+    /**
+     * Same as {@link #search(EventCriteria, Pageable)}, but the payload of the events is not fetched. It can then be
+     * read with {@link #findPayloads(Collection)} for the events which need it.
+     */
+    public Page<Event> searchWithoutPayload(EventCriteria filter, Pageable pageable) {
+        Page<EventMongo> eventsMongo = internalEventRepo.searchWithoutPayload(filter, pageable);
+
+        List<Event> content = mapper.collection2list(eventsMongo.getContent(), EventMongo.class, Event.class);
+        return SearchPage.withContent(eventsMongo, content);
+    }
+
+    public List<Event> searchWithoutPayload(EventCriteria filter) {
+        Page<EventMongo> eventsMongo = internalEventRepo.searchWithoutPayload(filter, null);
+
+        return mapper.collection2list(eventsMongo.getContent(), EventMongo.class, Event.class);
+    }
+
+    /**
+     * Returns the payloads of the given events, by event id, in a single query. Events without payload or which do
+     * not exist are not part of the result.
+     */
+    public Map<String, String> findPayloads(Collection<String> eventIds) {
+        if (eventIds == null || eventIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<EventMongo> eventsMongo = internalEventRepo.findPayloads(eventIds);
+        resolvePayloads(eventsMongo);
+
+        final Map<String, String> payloads = new HashMap<>(eventsMongo.size());
+        eventsMongo.stream()
+                .filter(event -> event.getPayload() != null)
+                .forEach(event -> payloads.put(event.getId(), event.getPayload()));
+        return payloads;
+    }
+
+    /**
+     * Incremental feed of events, for gateways synchronization: returns the next events matching the types and
+     * properties of the filter, in ascending order of update date and id, after the last event already read.
+     * Unlike {@link #search(EventCriteria)}, no count is run and the read resumes from an index position.
+     *
+     * @param filter The types and properties of the events, its range is not used.
+     * @param updatedAt The update date of the last event read, or <code>0</code> to start from the beginning.
+     * @param id The id of the last event read, or <code>null</code> to include all the events updated at
+     *           <code>updatedAt</code>.
+     * @param limit The maximum number of events to return.
+     */
+    public List<Event> findAfter(EventCriteria filter, long updatedAt, String id, int limit) {
+        List<EventMongo> eventsMongo = internalEventRepo.findAfter(
+                filter, (updatedAt != 0) ? new Date(updatedAt) : null, id, limit);
+        resolvePayloads(eventsMongo);
+
+        return mapper.collection2list(eventsMongo, EventMongo.class, Event.class);
+    }
+
+    /**
+     * Sets the payloads stored apart of the given events, looked up all at once.
+     */
+    private void resolvePayloads(Collection<EventMongo> events) {
+        final List<String> hashes = events.stream()
+                .map(EventMongo::getPayloadHash)
+                .filter(hash -> hash != null)
+                .distinct()
+                .collect(Collectors.toList());
+
+        if (!hashes.isEmpty()) {
+            final Map<String, String> payloads = payloadStore.load(hashes);
+            events.stream()
+                    .filter(event -> event.getPayloadHash() != null)
+                    .forEach(event -> event.setPayload(payloads.get(event.getPayloadHash())));
+        }
+    }
+
     private EventMongo mapEvent(Event event) {
         if (event == null) {
             return null;
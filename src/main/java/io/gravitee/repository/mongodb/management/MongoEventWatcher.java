@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.*;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import org.bson.types.BSONTimestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Pushes the events inserted or updated in the <code>events</code> collection to subscribers.
+ *
+ * On a replica set, the oplog is tailed. On a standalone server, which has no oplog, the events collection is polled
+ * with {@link MongoEventRepository#findAfter}, the poll interval doubling while nothing new is found. The position of
+ * each subscriber is persisted in the <code>event_subscriptions</code> collection once its listener has been called
+ * for a batch of events, so that it resumes from there after a restart: events are delivered at least once, the end
+ * of a batch being delivered again after a crash. A subscriber switching from one mode to the other resumes from the
+ * position saved by the previous mode.
+ *
+ * The mode is chosen with <code>management.mongodb.events.watch.mode</code>: <code>auto</code> (default),
+ * <code>oplog</code> or <code>polling</code>.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+public class MongoEventWatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(MongoEventWatcher.class);
+
+    static final String SUBSCRIPTIONS_COLLECTION = "event_subscriptions";
+
+    private static final String OPLOG_DATABASE = "local";
+    private static final String OPLOG_COLLECTION = "oplog.rs";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoEventRepository eventRepository;
+
+    @Autowired
+    private Environment environment;
+
+    private String mode;
+
+    private long pollInterval;
+
+    private long maxPollInterval;
+
+    private int batchSize;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        mode = environment.getProperty("management.mongodb.events.watch.mode", "auto");
+        pollInterval = environment.getProperty("management.mongodb.events.watch.pollInterval", Long.class, 1000L);
+        maxPollInterval = environment.getProperty("management.mongodb.events.watch.maxPollInterval", Long.class, 30000L);
+        batchSize = environment.getProperty("management.mongodb.events.watch.batchSize", Integer.class, 100);
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.forEach(Subscription::close);
+    }
+
+    /**
+     * Starts pushing events to a listener, from the last position of the subscriber, or from now for a new one.
+     *
+     * @param subscriberId The id under which the position is persisted, unique for each subscriber.
+     * @param listener The listener, called from a dedicated thread.
+     * @return The subscription, to close when events are not needed anymore.
+     */
+    public Subscription subscribe(String subscriberId, Consumer<Event> listener) {
+        final boolean oplog = "oplog".equalsIgnoreCase(mode) || ("auto".equalsIgnoreCase(mode) && isReplicaSet());
+        final Subscription subscription = new Subscription(subscriberId, listener, oplog);
+        subscriptions.add(subscription);
+        subscription.thread.start();
+
+        logger.info("Events subscription [{}] started, using {}", subscriberId, oplog ? "oplog tailing" : "polling");
+        return subscription;
+    }
+
+    boolean isReplicaSet() {
+        return mongoTemplate.executeCommand("{ isMaster: 1 }").containsField("setName");
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final String subscriberId;
+        private final Consumer<Event> listener;
+        private final boolean oplog;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile DBCursor cursor;
+
+        private Subscription(String subscriberId, Consumer<Event> listener, boolean oplog) {
+            this.subscriberId = subscriberId;
+            this.listener = listener;
+            this.oplog = oplog;
+            this.thread = new Thread(this::run, "gio.mongo-event-watcher-" + subscriberId);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            thread.interrupt();
+
+            DBCursor current = cursor;
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        private void run() {
+            long backoff = pollInterval;
+
+            while (running) {
+                try {
+                    // A dead oplog cursor is opened again shortly, polling slows down while nothing new is found
+                    boolean found = oplog ? tail() : poll();
+                    backoff = (found || oplog) ? pollInterval : Math.min(backoff * 2, maxPollInterval);
+                } catch (Exception ex) {
+                    if (!running) {
+                        break;
+                    }
+                    logger.error("An error occurs while watching events for [{}]", subscriberId, ex);
+                    backoff = Math.min(backoff * 2, maxPollInterval);
+                }
+
+                if (running) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Tails the oplog until the cursor dies or the subscription is closed.
+         */
+        private boolean tail() {
+            DBObject position = position();
+            BSONTimestamp ts;
+            if (position != null && position.get("ts") instanceof BSONTimestamp) {
+                ts = (BSONTimestamp) position.get("ts");
+            } else {
+                // A new subscriber starts from now, even if it is restarted before receiving its first event
+                ts = new BSONTimestamp((int) (System.currentTimeMillis() / 1000), 0);
+                if (position != null && position.get("updatedAt") instanceof Date) {
+                    // Events following the position saved by polling are caught up first, the oplog being tailed
+                    // from the beginning of the catch-up so that nothing written meanwhile is missed
+                    poll();
+                    if (!running) {
+                        return false;
+                    }
+                }
+                savePosition(new BasicDBObject("ts", ts));
+            }
+
+            final String ns = mongoTemplate.getDb().getName() + '.' + mongoTemplate.getCollectionName(EventMongo.class);
+            final DBObject query = new BasicDBObject("ts", new BasicDBObject("$gt", ts))
+                    .append("ns", ns)
+                    .append("op", new BasicDBObject("$in", Arrays.asList("i", "u")));
+
+            boolean found = false;
+            int unsaved = 0;
+            long savedAt = System.currentTimeMillis();
+            cursor = mongoTemplate.getDb().getMongo().getDB(OPLOG_DATABASE).getCollection(OPLOG_COLLECTION)
+                    .find(query)
+                    .addOption(Bytes.QUERYOPTION_TAILABLE)
+                    .addOption(Bytes.QUERYOPTION_AWAITDATA)
+                    .addOption(Bytes.QUERYOPTION_OPLOGREPLAY);
+
+            try {
+                // On an await-data cursor, hasNext() blocks on the server side until an entry comes or the await
+                // times out, and only returns false once the cursor is dead and has to be opened again
+                while (running && cursor.hasNext()) {
+                    final DBObject entry = cursor.next();
+                    final DBObject document = (DBObject) ("i".equals(entry.get("op")) ? entry.get("o") : entry.get("o2"));
+                    final Optional<Event> event = eventRepository.findById(String.valueOf(document.get("_id")));
+                    event.ifPresent(listener);
+
+                    ts = (BSONTimestamp) entry.get("ts");
+                    found = true;
+
+                    // The position is saved once per batch of entries, or once per poll interval
+                    if (++unsaved >= batchSize || System.currentTimeMillis() - savedAt >= pollInterval) {
+                        savePosition(new BasicDBObject("ts", ts));
+                        unsaved = 0;
+                        savedAt = System.currentTimeMillis();
+                    }
+                }
+            } catch (Exception ex) {
+                if (running) {
+                    throw new IllegalStateException("Unable to tail the oplog", ex);
+                }
+            } finally {
+                cursor.close();
+                if (unsaved > 0) {
+                    savePosition(new BasicDBObject("ts", ts));
+                }
+            }
+
+            return found;
+        }
+
+        /**
+         * Reads the events following the last position, by batches, until there is no more.
+         */
+        private boolean poll() {
+            DBObject position = position();
+            long updatedAt;
+            String id;
+            if (position != null && position.get("updatedAt") instanceof Date) {
+                updatedAt = ((Date) position.get("updatedAt")).getTime();
+                id = (String) position.get("eventId");
+            } else if (position != null && position.get("ts") instanceof BSONTimestamp) {
+                // Resumes from the oplog position, to the second
+                updatedAt = ((BSONTimestamp) position.get("ts")).getTime() * 1000L;
+                id = null;
+            } else {
+                updatedAt = System.currentTimeMillis();
+                id = null;
+                savePosition(new BasicDBObject("updatedAt", new Date(updatedAt)));
+            }
+
+            boolean found = false;
+            List<Event> events;
+            do {
+                events = eventRepository.findAfter(null, updatedAt, id, batchSize);
+                boolean moved = false;
+                for (Event event : events) {
+                    if (!running) {
+                        break;
+                    }
+
+                    listener.accept(event);
+                    if (event.getUpdatedAt() == null) {
+                        continue;
+                    }
+
+                    updatedAt = event.getUpdatedAt().getTime();
+                    id = event.getId();
+                    moved = true;
+                }
+
+                // The position is saved once per batch
+                if (moved) {
+                    savePosition(new BasicDBObject("updatedAt", new Date(updatedAt)).append("eventId", id));
+                    found = true;
+                }
+            } while (running && events.size() == batchSize);
+
+            return found;
+        }
+
+        private DBObject position() {
+            return mongoTemplate.getCollection(SUBSCRIPTIONS_COLLECTION).findOne(new BasicDBObject("_id", subscriberId));
+        }
+
+        /**
+         * Replaces the saved position, so that only the position of the current mode is kept.
+         */
+        private void savePosition(DBObject position) {
+            mongoTemplate.getCollection(SUBSCRIPTIONS_COLLECTION).update(
+                    new BasicDBObject("_id", subscriberId), position, true, false);
+        }
+    }
+}
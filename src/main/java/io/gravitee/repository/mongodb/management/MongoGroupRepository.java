@@ -24,6 +24,8 @@ import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
@@ -46,6 +48,9 @@ public class MongoGroupRepository implements GroupRepository {
     @Autowired
     private GraviteeMapper mapper;
 
+    @Autowired
+    private MongoCursorStreamer cursorStreamer;
+
     @Override
     public Optional<Group> findById(String s) throws TechnicalException {
         logger.debug("Find group by id [{}]", s);
@@ -108,6 +113,14 @@ public class MongoGroupRepository implements GroupRepository {
         return all;
     }
 
+    /**
+     * Same as {@link #findAll()}, but groups are read through a cursor and mapped one at a time. The iterator has to
+     * be closed if it is not consumed until the end.
+     */
+    public CloseableIterator<Group> streamAll() {
+        return cursorStreamer.stream(new Query(), GroupMongo.class, this::map);
+    }
+
     private GroupMongo map(Group group) {
         return mapper.map(group, GroupMongo.class);
     }
@@ -26,12 +26,18 @@ import io.gravitee.repository.mongodb.management.internal.model.MetadataPkMongo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
@@ -44,6 +50,9 @@ public class MongoMetadataRepository implements MetadataRepository {
     @Autowired
     private MetadataMongoRepository internalMetadataRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Override
     public Optional<Metadata> findById(final String key, final String referenceId,
                                        final MetadataReferenceType referenceType) throws TechnicalException {
@@ -69,23 +78,25 @@ public class MongoMetadataRepository implements MetadataRepository {
 
         final MetadataPkMongo metadataId =
                 new MetadataPkMongo(metadata.getKey(), metadata.getReferenceId(), metadata.getReferenceType().name());
-        MetadataMongo metadataMongo = internalMetadataRepository.findOne(metadataId);
-
-        if (metadataMongo == null) {
-            throw new IllegalStateException(String.format("No metadata found with id [%s]", metadataId));
-        }
+        final Update update = new Update()
+                .set("name", metadata.getName())
+                .set("value", metadata.getValue())
+                .set("format", metadata.getFormat().name());
 
+        final MetadataMongo metadataMongo;
         try {
-            metadataMongo.setName(metadata.getName());
-            metadataMongo.setValue(metadata.getValue());
-            metadataMongo.setFormat(metadata.getFormat().name());
-
-            return map(internalMetadataRepository.save(metadataMongo));
-
+            metadataMongo = mongoTemplate.findAndModify(
+                    query(where("_id").is(metadataId)), update, options().returnNew(true), MetadataMongo.class);
         } catch (Exception e) {
             LOGGER.error("An error occurred while updating metadata", e);
             throw new TechnicalException("An error occurred while updating metadata");
         }
+
+        if (metadataMongo == null) {
+            throw new IllegalStateException(String.format("No metadata found with id [%s]", metadataId));
+        }
+
+        return map(metadataMongo);
     }
 
     @Override
@@ -28,6 +28,8 @@ import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
@@ -35,6 +37,10 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author Titouan COMPIEGNE (titouan.compiegne at graviteesource.com)
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com)
@@ -51,6 +57,12 @@ public class MongoPageRepository implements PageRepository {
     @Autowired
     private GraviteeMapper mapper;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoTextCompression textCompression;
+
     @Override
     public Collection<Page> findApiPageByApiId(String apiId) throws TechnicalException {
         logger.debug("Find pages by api {}", apiId);
@@ -93,40 +105,34 @@ public class MongoPageRepository implements PageRepository {
             throw new IllegalStateException("Page must not be null");
         }
 
-        PageMongo pageMongo = internalPageRepo.findOne(page.getId());
-        if (pageMongo == null) {
-            throw new IllegalStateException(String.format("No page found with id [%s]", page.getId()));
-        }
-
+        final PageMongo pageMongoUpdated;
         try {
-            pageMongo.setName(page.getName());
-            pageMongo.setContent(page.getContent());
-            pageMongo.setLastContributor(page.getLastContributor());
-            pageMongo.setCreatedAt(page.getCreatedAt());
-            pageMongo.setUpdatedAt(page.getUpdatedAt());
-            pageMongo.setOrder(page.getOrder());
-            pageMongo.setPublished(page.isPublished());
-            pageMongo.setHomepage(page.isHomepage());
-            pageMongo.setExcludedGroups(page.getExcludedGroups());
-            if (page.getSource() != null) {
-                pageMongo.setSource(convert(page.getSource()));
-            } else {
-                pageMongo.setSource(null);
-            }
-            if (page.getConfiguration() != null) {
-                pageMongo.setConfiguration(convert(page.getConfiguration()));
-            } else {
-                pageMongo.setConfiguration(null);
-            }
-
-            PageMongo pageMongoUpdated = internalPageRepo.save(pageMongo);
-            return mapper.map(pageMongoUpdated, Page.class);
-
+            final Update update = new Update()
+                    .set("name", page.getName())
+                    .set("content", textCompression.compress(page.getContent()))
+                    .set("lastContributor", page.getLastContributor())
+                    .set("createdAt", page.getCreatedAt())
+                    .set("updatedAt", page.getUpdatedAt())
+                    .set("order", page.getOrder())
+                    .set("published", page.isPublished())
+                    .set("homepage", page.isHomepage())
+                    .set("excludedGroups", page.getExcludedGroups())
+                    .set("source", (page.getSource() != null) ? convert(page.getSource()) : null)
+                    .set("configuration", (page.getConfiguration() != null) ? convert(page.getConfiguration()) : null);
+
+            pageMongoUpdated = mongoTemplate.findAndModify(
+                    query(where("_id").is(page.getId())), update, options().returnNew(true), PageMongo.class);
         } catch (Exception e) {
 
             logger.error("An error occured when updating page", e);
             throw new TechnicalException("An error occured when updating page");
         }
+
+        if (pageMongoUpdated == null) {
+            throw new IllegalStateException(String.format("No page found with id [%s]", page.getId()));
+        }
+
+        return mapper.map(pageMongoUpdated, Page.class);
     }
 
     @Override
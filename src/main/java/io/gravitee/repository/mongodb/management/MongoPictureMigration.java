@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import io.gravitee.repository.mongodb.management.internal.model.UserMongo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Moves the pictures still stored inline in API and user documents to GridFS, in the background, when pictures are
+ * stored in GridFS.
+ *
+ * A document is only updated if its picture did not change in the meantime, so that a concurrent update always wins.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoPictureMigration {
+
+    private final Logger logger = LoggerFactory.getLogger(MongoPictureMigration.class);
+
+    /**
+     * BSON type of strings.
+     */
+    private static final int STRING_TYPE = 2;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoPictureStore pictureStore;
+
+    @Autowired
+    private Environment environment;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        if (pictureStore.isGridFs() &&
+                environment.getProperty("management.mongodb.picture.migration.enabled", Boolean.class, true)) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gio.mongo-picture-migration");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.execute(() -> {
+                migrate(ApiMongo.class);
+                migrate(UserMongo.class);
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    void migrate(Class<?> entityClass) {
+        final String collectionName = mongoTemplate.getCollectionName(entityClass);
+        final DBCollection collection = mongoTemplate.getCollection(collectionName);
+        int migrated = 0;
+
+        try (DBCursor cursor = collection
+                .find(new BasicDBObject("picture", new BasicDBObject("$type", STRING_TYPE)),
+                        new BasicDBObject("picture", 1))
+                .batchSize(100)) {
+            while (cursor.hasNext() && !Thread.currentThread().isInterrupted()) {
+                final DBObject document = cursor.next();
+                final Object id = document.get("_id");
+                final String picture = (String) document.get("picture");
+
+                final MongoPictureStore.StoredPicture stored = pictureStore.store(collectionName, id.toString(), picture);
+                final int updated = collection.update(
+                        new BasicDBObject("_id", id).append("picture", picture),
+                        new BasicDBObject("$set", new BasicDBObject("pictureId", stored.id).append("pictureHash", stored.hash))
+                                .append("$unset", new BasicDBObject("picture", ""))).getN();
+
+                if (updated > 0) {
+                    pictureStore.deleteOthers(collectionName, id.toString(), stored.id);
+                    migrated++;
+                } else {
+                    // The picture has been changed in the meantime, the file stored for it is not referenced
+                    pictureStore.discard(stored);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("An error occurs while moving the pictures of {} to GridFS", collectionName, ex);
+        }
+
+        logger.info("{} pictures of {} moved to GridFS", migrated, collectionName);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import io.gravitee.repository.mongodb.common.ContentHash;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static io.gravitee.repository.mongodb.common.AbstractRepositoryConfiguration.PICTURE_BUCKET;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereFilename;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereMetaData;
+
+/**
+ * Stores the pictures of APIs and users in a GridFS bucket, when <code>management.mongodb.picture.storage</code> is
+ * <code>gridfs</code>.
+ *
+ * Files are named after the collection and the id of their entity, and carry the hash of their content so that an
+ * unchanged picture is not uploaded again. The entity document only keeps the id of the file and the hash.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoPictureStore {
+
+    private static final String HASH = "hash";
+
+    @Autowired
+    private GridFsTemplate pictureGridFsTemplate;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    private boolean gridFs;
+
+    @PostConstruct
+    public void init() {
+        gridFs = "gridfs".equalsIgnoreCase(environment.getProperty("management.mongodb.picture.storage", "inline"));
+    }
+
+    boolean isGridFs() {
+        return gridFs;
+    }
+
+    /**
+     * Stores the picture of an entity, unless the same picture is already stored for it.
+     */
+    StoredPicture store(String collection, String id, String picture) {
+        final String filename = filename(collection, id);
+        final String hash = ContentHash.sha256(picture);
+
+        final GridFSDBFile existing = pictureGridFsTemplate.findOne(
+                query(whereFilename().is(filename)).addCriteria(whereMetaData(HASH).is(hash)));
+        if (existing != null) {
+            return new StoredPicture(existing.getId().toString(), hash, false);
+        }
+
+        final Object fileId = pictureGridFsTemplate.store(
+                new ByteArrayInputStream(picture.getBytes(StandardCharsets.UTF_8)),
+                filename, new BasicDBObject(HASH, hash)).getId();
+        return new StoredPicture(fileId.toString(), hash, true);
+    }
+
+    /**
+     * Removes a picture stored for an entity which could not be written afterwards. A picture which was already
+     * stored before is kept, since it may still be referenced.
+     */
+    void discard(StoredPicture picture) {
+        if (picture != null && picture.created) {
+            pictureGridFsTemplate.delete(query(where("_id").is(new ObjectId(picture.id))));
+        }
+    }
+
+    /**
+     * Returns the content of a stored picture, or <code>null</code> if it does not exist anymore.
+     */
+    String load(String pictureId) {
+        final GridFSDBFile file = pictureGridFsTemplate.findOne(query(where("_id").is(new ObjectId(pictureId))));
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            return StreamUtils.copyToString(file.getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Unable to read picture " + pictureId, ioe);
+        }
+    }
+
+    /**
+     * Returns the content of several stored pictures by id, with one query on the files and one on the chunks of the
+     * bucket, whatever the number of pictures. Pictures which do not exist anymore are left out.
+     */
+    Map<String, String> loadAll(Collection<String> pictureIds) {
+        if (pictureIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final List<ObjectId> ids = pictureIds.stream().distinct().map(ObjectId::new).collect(Collectors.toList());
+        final Map<Object, ByteArrayOutputStream> contents = new HashMap<>(ids.size());
+
+        try (DBCursor files = mongoTemplate.getCollection(PICTURE_BUCKET + ".files").find(
+                new BasicDBObject("_id", new BasicDBObject("$in", ids)), new BasicDBObject("_id", 1))) {
+            files.forEach(file -> contents.put(file.get("_id"), new ByteArrayOutputStream()));
+        }
+
+        if (contents.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try (DBCursor chunks = mongoTemplate.getCollection(PICTURE_BUCKET + ".chunks")
+                .find(new BasicDBObject("files_id", new BasicDBObject("$in", contents.keySet())),
+                        new BasicDBObject("files_id", 1).append("data", 1))
+                .sort(new BasicDBObject("files_id", 1).append("n", 1))) {
+            for (DBObject chunk : chunks) {
+                final byte[] data = (byte[]) chunk.get("data");
+                contents.get(chunk.get("files_id")).write(data, 0, data.length);
+            }
+        }
+
+        final Map<String, String> pictures = new HashMap<>(contents.size());
+        contents.forEach((id, content) ->
+                pictures.put(id.toString(), new String(content.toByteArray(), StandardCharsets.UTF_8)));
+        return pictures;
+    }
+
+    /**
+     * Removes the pictures of an entity other than the given one, once the entity does not reference them anymore.
+     */
+    void deleteOthers(String collection, String id, String pictureId) {
+        pictureGridFsTemplate.delete(query(whereFilename().is(filename(collection, id)))
+                .addCriteria(where("_id").ne(new ObjectId(pictureId))));
+    }
+
+    void delete(String collection, String id) {
+        pictureGridFsTemplate.delete(query(whereFilename().is(filename(collection, id))));
+    }
+
+    private static String filename(String collection, String id) {
+        return collection + '/' + id;
+    }
+
+    static final class StoredPicture {
+
+        final String id;
+        final String hash;
+        final boolean created;
+
+        StoredPicture(String id, String hash, boolean created) {
+            this.id = id;
+            this.hash = hash;
+            this.created = created;
+        }
+    }
+}
@@ -22,12 +22,18 @@ import io.gravitee.repository.mongodb.management.internal.model.PlanMongo;
 import io.gravitee.repository.mongodb.management.internal.plan.PlanMongoRepository;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author GraviteeSource Team
@@ -41,6 +47,12 @@ public class MongoPlanRepository implements PlanRepository {
     @Autowired
     private PlanMongoRepository internalPlanRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoReplaceUpdate replaceUpdate;
+
     @Override
     public Set<Plan> findByApi(String apiId) throws TechnicalException {
             return internalPlanRepository.findByApisContaining(apiId)
@@ -68,15 +80,17 @@ public class MongoPlanRepository implements PlanRepository {
             throw new IllegalStateException("Plan to update must have an id");
         }
 
-        PlanMongo planMongo = internalPlanRepository.findOne(plan.getId());
+        final PlanMongo planMongo = map(plan);
+        final Update update = replaceUpdate.of(planMongo);
+
+        final PlanMongo planMongoUpdated = mongoTemplate.findAndModify(
+                query(where("_id").is(plan.getId())), update, options().returnNew(true), PlanMongo.class);
 
-        if (planMongo == null) {
+        if (planMongoUpdated == null) {
             throw new IllegalStateException(String.format("No plan found with id [%s]", plan.getId()));
         }
-        
-        planMongo = map(plan);
-        planMongo = internalPlanRepository.save(planMongo);
-        return map(planMongo);
+
+        return map(planMongoUpdated);
     }
 
     @Override
@@ -25,6 +25,8 @@ import io.gravitee.repository.mongodb.management.internal.model.RatingMongo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
@@ -34,6 +36,9 @@ import java.util.Optional;
 
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
@@ -47,6 +52,9 @@ public class MongoRatingRepository implements RatingRepository {
     @Autowired
     private RatingMongoRepository internalRatingRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Override
     public Optional<Rating> findById(String id) throws TechnicalException {
         LOGGER.debug("Find rating by ID [{}]", id);
@@ -95,23 +103,29 @@ public class MongoRatingRepository implements RatingRepository {
         if (rating == null || rating.getId() == null) {
             throw new IllegalStateException("Rating to update must specify an id");
         }
-        final RatingMongo ratingMongo = internalRatingRepository.findOne(rating.getId());
-        if (ratingMongo == null) {
-            throw new IllegalStateException(String.format("No rating found with id [%s]", rating.getId()));
-        }
+        final Update update = new Update()
+                .set("api", rating.getApi())
+                .set("user", rating.getUser())
+                .set("rate", rating.getRate())
+                .set("title", rating.getTitle())
+                .set("comment", rating.getComment())
+                .set("createdAt", rating.getCreatedAt())
+                .set("updatedAt", rating.getUpdatedAt());
+
+        final RatingMongo ratingMongo;
         try {
-            ratingMongo.setApi(rating.getApi());
-            ratingMongo.setUser(rating.getUser());
-            ratingMongo.setRate(rating.getRate());
-            ratingMongo.setTitle(rating.getTitle());
-            ratingMongo.setComment(rating.getComment());
-            ratingMongo.setCreatedAt(rating.getCreatedAt());
-            ratingMongo.setUpdatedAt(rating.getUpdatedAt());
-            return map(internalRatingRepository.save(ratingMongo));
+            ratingMongo = mongoTemplate.findAndModify(
+                    query(where("_id").is(rating.getId())), update, options().returnNew(true), RatingMongo.class);
         } catch (Exception e) {
             LOGGER.error("An error occurred while updating rating", e);
             throw new TechnicalException("An error occurred while updating rating");
         }
+
+        if (ratingMongo == null) {
+            throw new IllegalStateException(String.format("No rating found with id [%s]", rating.getId()));
+        }
+
+        return map(ratingMongo);
     }
 
     @Override
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the update replacing a document by an entity, so that it can be applied with a single
+ * <code>findAndModify</code> instead of a read followed by a <code>save</code>.
+ *
+ * The entity is converted as <code>save</code> would do it, mapping events included (large text fields are then
+ * compressed). Every field of the converted document is set and every property without a value is unset, except the
+ * identifier, so that the stored document ends up as <code>save</code> would have written it.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoReplaceUpdate {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    Update of(Object entity) {
+        final MongoConverter converter = mongoTemplate.getConverter();
+        final MongoPersistentEntity<?> persistentEntity =
+                converter.getMappingContext().getPersistentEntity(entity.getClass());
+
+        eventPublisher.publishEvent(new BeforeConvertEvent<>(entity));
+        final DBObject document = new BasicDBObject();
+        converter.write(entity, document);
+        eventPublisher.publishEvent(new BeforeSaveEvent<>(entity, document));
+
+        final String idField = persistentEntity.getIdProperty().getFieldName();
+        final Update update = new Update();
+        for (String field : document.keySet()) {
+            if (!idField.equals(field)) {
+                update.set(field, document.get(field));
+            }
+        }
+
+        persistentEntity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+            String field = property.getFieldName();
+            if (!property.isIdProperty() && !document.containsField(field)) {
+                update.unset(field);
+            }
+        });
+
+        return update;
+    }
+}
@@ -25,6 +25,8 @@ import io.gravitee.repository.mongodb.management.internal.role.RoleMongoReposito
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -32,6 +34,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com)
  * @author GraviteeSource Team
@@ -44,6 +50,9 @@ public class MongoRoleRepository implements RoleRepository {
     @Autowired
     private RoleMongoRepository internalRoleRepo;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Override
     public Optional<Role> findById(RoleScope scope, String name) throws TechnicalException {
         LOGGER.debug("Find role by ID [{}, {}]", scope, name);
@@ -71,25 +80,26 @@ public class MongoRoleRepository implements RoleRepository {
     @Override
     public Role update(Role role) throws TechnicalException {
         final RolePkMongo id = convert(role);
-        final RoleMongo roleMongo = internalRoleRepo.findOne(id);
-
-        if (roleMongo == null) {
-            throw new IllegalStateException(String.format("No role found with id [%s]", id));
-        }
+        final Update update = new Update()
+                .set("description", role.getDescription())
+                .set("defaultRole", role.isDefaultRole())
+                .set("permissions", role.getPermissions());
 
+        final RoleMongo roleMongoUpdated;
         try {
-            roleMongo.setDescription(role.getDescription());
-            roleMongo.setDefaultRole(role.isDefaultRole());
-            roleMongo.setPermissions(role.getPermissions());
-
-            RoleMongo roleMongoUpdated = internalRoleRepo.save(roleMongo);
-            return map(roleMongoUpdated);
-
+            roleMongoUpdated = mongoTemplate.findAndModify(
+                    query(where("_id").is(id)), update, options().returnNew(true), RoleMongo.class);
         } catch (Exception e) {
 
             LOGGER.error("An error occured when updating role", e);
             throw new TechnicalException("An error occured when updating role");
         }
+
+        if (roleMongoUpdated == null) {
+            throw new IllegalStateException(String.format("No role found with id [%s]", id));
+        }
+
+        return map(roleMongoUpdated);
     }
 
     @Override
@@ -22,12 +22,18 @@ import io.gravitee.repository.mongodb.management.internal.model.SubscriptionMong
 import io.gravitee.repository.mongodb.management.internal.plan.SubscriptionMongoRepository;
 import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author GraviteeSource Team
@@ -41,6 +47,12 @@ public class MongoSubscriptionRepository implements SubscriptionRepository {
     @Autowired
     private SubscriptionMongoRepository internalSubscriptionRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoReplaceUpdate replaceUpdate;
+
     @Override
     public Set<Subscription> findByPlan(String plan) throws TechnicalException {
         return internalSubscriptionRepository.findByPlan(plan)
@@ -76,15 +88,17 @@ public class MongoSubscriptionRepository implements SubscriptionRepository {
             throw new IllegalStateException("Subscription to update must have an id");
         }
 
-        SubscriptionMongo subscriptionMongo = internalSubscriptionRepository.findOne(subscription.getId());
+        final SubscriptionMongo subscriptionMongo = map(subscription);
+        final Update update = replaceUpdate.of(subscriptionMongo);
+
+        final SubscriptionMongo subscriptionMongoUpdated = mongoTemplate.findAndModify(
+                query(where("_id").is(subscription.getId())), update, options().returnNew(true), SubscriptionMongo.class);
 
-        if (subscriptionMongo == null) {
+        if (subscriptionMongoUpdated == null) {
             throw new IllegalStateException(String.format("No subscription found with id [%s]", subscription.getId()));
         }
 
-        subscriptionMongo = map(subscription);
-        subscriptionMongo = internalSubscriptionRepository.save(subscriptionMongo);
-        return map(subscriptionMongo);
+        return map(subscriptionMongoUpdated);
     }
 
     @Override
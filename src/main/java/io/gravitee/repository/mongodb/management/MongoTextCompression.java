@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.model.*;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.*;
+
+/**
+ * Compresses the large text fields of management documents (API and plan definitions, event payloads, page contents
+ * and audit patches) when <code>management.mongodb.compression.enabled</code> is <code>true</code>.
+ *
+ * A compressed field is stored as a BinData of a user-defined subtype, whose first byte identifies the algorithm.
+ * Fields are decompressed when documents are loaded, whether compression is enabled or not, and plain strings are
+ * read as they are, so that documents written before compression was enabled remain readable.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+class MongoTextCompression implements ApplicationListener<MongoMappingEvent<?>> {
+
+    static final byte BINARY_SUBTYPE = (byte) 0x80;
+
+    private static final byte GZIP = 1;
+    private static final byte DEFLATE = 2;
+
+    private static final Map<Class<?>, String> COMPRESSED_FIELDS = new HashMap<>();
+
+    static {
+        COMPRESSED_FIELDS.put(ApiMongo.class, "definition");
+        COMPRESSED_FIELDS.put(PlanMongo.class, "definition");
+        COMPRESSED_FIELDS.put(EventMongo.class, "payload");
+        COMPRESSED_FIELDS.put(EventPayloadMongo.class, "payload");
+        COMPRESSED_FIELDS.put(PageMongo.class, "content");
+        COMPRESSED_FIELDS.put(AuditMongo.class, "patch");
+    }
+
+    @Autowired
+    private Environment environment;
+
+    private boolean enabled;
+
+    private byte algorithm;
+
+    private int threshold;
+
+    @PostConstruct
+    public void init() {
+        enabled = environment.getProperty("management.mongodb.compression.enabled", Boolean.class, false);
+        algorithm = "deflate".equalsIgnoreCase(
+                environment.getProperty("management.mongodb.compression.algorithm", "gzip")) ? DEFLATE : GZIP;
+        threshold = environment.getProperty("management.mongodb.compression.threshold", Integer.class, 4096);
+    }
+
+    @Override
+    public void onApplicationEvent(MongoMappingEvent<?> event) {
+        if (event instanceof BeforeSaveEvent) {
+            String field = COMPRESSED_FIELDS.get(event.getSource().getClass());
+            DBObject dbo = event.getDBObject();
+            if (field != null && dbo != null && dbo.get(field) instanceof String) {
+                dbo.put(field, compress((String) dbo.get(field)));
+            }
+        } else if (event instanceof AfterLoadEvent) {
+            String field = COMPRESSED_FIELDS.get(((AfterLoadEvent<?>) event).getType());
+            DBObject dbo = event.getDBObject();
+            if (field != null && dbo != null && isCompressed(dbo.get(field))) {
+                dbo.put(field, decompress(dbo.get(field)));
+            }
+        }
+    }
+
+    /**
+     * Returns the value to store for a large text field: the text itself if compression is disabled or if the text
+     * is too small to be worth it, a compressed BinData otherwise.
+     */
+    Object compress(String text) {
+        if (!enabled || text == null || text.length() < threshold) {
+            return text;
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4);
+            out.write(algorithm);
+            try (OutputStream compressed = (algorithm == DEFLATE) ?
+                    new DeflaterOutputStream(out) : new GZIPOutputStream(out)) {
+                compressed.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+            return new Binary(BINARY_SUBTYPE, out.toByteArray());
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Unable to compress text", ioe);
+        }
+    }
+
+    private static boolean isCompressed(Object value) {
+        return value instanceof Binary && ((Binary) value).getType() == BINARY_SUBTYPE;
+    }
+
+    /**
+     * Returns the text of a stored value, be it compressed or not.
+     */
+    String decompress(Object value) {
+        if (!isCompressed(value)) {
+            return (String) value;
+        }
+
+        byte[] data = ((Binary) value).getData();
+        if (data.length == 0 || (data[0] != GZIP && data[0] != DEFLATE)) {
+            throw new IllegalStateException("Unknown compression algorithm");
+        }
+
+        InputStream in = new ByteArrayInputStream(data, 1, data.length - 1);
+        try (InputStream decompressed = (data[0] == DEFLATE) ? new InflaterInputStream(in) : new GZIPInputStream(in)) {
+            return StreamUtils.copyToString(decompressed, StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Unable to decompress text", ioe);
+        }
+    }
+}
@@ -24,6 +24,9 @@ import io.gravitee.repository.mongodb.management.mapper.GraviteeMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -45,12 +48,24 @@ public class MongoUserRepository implements UserRepository {
 	@Autowired
 	private GraviteeMapper mapper;
 
+	@Autowired
+	private MongoCursorStreamer cursorStreamer;
+
+	@Autowired
+	private MongoPictureStore pictureStore;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
 	@Override
 	public Optional<User> findByUsername(String username) throws TechnicalException {
 		logger.debug("Find user by name user [{}]", username);
 
 		UserMongo user = internalUserRepo.findOne(username);
 		User res = mapper.map(user, User.class);
+		if (res != null && res.getPicture() == null && user.getPictureId() != null) {
+			res.setPicture(pictureStore.load(user.getPictureId()));
+		}
 
 		logger.debug("Find user by name user [{}] - Done", username);
 		return Optional.ofNullable(res);
@@ -78,14 +93,37 @@ public class MongoUserRepository implements UserRepository {
 		return res;
 	}
 
+	/**
+	 * Same as {@link #findAll()}, but users are read through a cursor and mapped one at a time. The iterator has to be
+	 * closed if it is not consumed until the end.
+	 */
+	public CloseableIterator<User> streamAll() {
+		final Query query = new Query();
+		query.fields().exclude("picture");
+		return cursorStreamer.stream(query, UserMongo.class, userMongo -> mapper.map(userMongo, User.class));
+	}
+
 	@Override
 	public User create(User user) throws TechnicalException {
 		logger.debug("Create user [{}]", user.getUsername());
 
 		UserMongo userMongo = mapper.map(user, UserMongo.class);
-		UserMongo createdUserMongo = internalUserRepo.insert(userMongo);
+		final MongoPictureStore.StoredPicture picture = storePicture(user);
+		if (picture != null) {
+			userMongo.setPicture(null);
+			userMongo.setPictureId(picture.id);
+			userMongo.setPictureHash(picture.hash);
+		}
+		UserMongo createdUserMongo;
+		try {
+			createdUserMongo = internalUserRepo.insert(userMongo);
+		} catch (RuntimeException ex) {
+			pictureStore.discard(picture);
+			throw ex;
+		}
 
 		User res = mapper.map(createdUserMongo, User.class);
+		res.setPicture(user.getPicture());
 
 		logger.debug("Create user [{}] - Done", user.getUsername());
 
@@ -107,11 +145,43 @@ public class MongoUserRepository implements UserRepository {
 		userMongo.setCreatedAt(user.getCreatedAt());
 		userMongo.setUpdatedAt(user.getUpdatedAt());
 		userMongo.setPassword(user.getPassword());
-		userMongo.setPicture(user.getPicture());
 		userMongo.setLastConnectionAt(user.getLastConnectionAt());
 
-		UserMongo userUpdated = internalUserRepo.save(userMongo);
-		return mapper.map(userUpdated, User.class);
+		final MongoPictureStore.StoredPicture picture = storePicture(user);
+		userMongo.setPicture(pictureStore.isGridFs() ? null : user.getPicture());
+		userMongo.setPictureId((picture != null) ? picture.id : null);
+		userMongo.setPictureHash((picture != null) ? picture.hash : null);
+
+		UserMongo userUpdated;
+		try {
+			userUpdated = internalUserRepo.save(userMongo);
+		} catch (RuntimeException ex) {
+			pictureStore.discard(picture);
+			throw ex;
+		}
+
+		if (pictureStore.isGridFs()) {
+			if (picture != null) {
+				pictureStore.deleteOthers(pictureCollection(), user.getUsername(), picture.id);
+			} else {
+				pictureStore.delete(pictureCollection(), user.getUsername());
+			}
+		}
+
+		User res = mapper.map(userUpdated, User.class);
+		res.setPicture(user.getPicture());
+		return res;
+	}
+
+	private MongoPictureStore.StoredPicture storePicture(User user) {
+		if (pictureStore.isGridFs() && user.getPicture() != null) {
+			return pictureStore.store(pictureCollection(), user.getUsername(), user.getPicture());
+		}
+		return null;
+	}
+
+	private String pictureCollection() {
+		return mongoTemplate.getCollectionName(UserMongo.class);
 	}
 
 }
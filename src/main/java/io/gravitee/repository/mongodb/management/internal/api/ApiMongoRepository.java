@@ -41,6 +41,15 @@ public interface ApiMongoRepository extends MongoRepository<ApiMongo, String> {
 
     @Query(value = "{}", fields="{'picture': 0}")
     List<ApiMongo> findAll();
+
+    @Query(value = "{ visibility: ?0 }", fields = "{'definition': 0, 'picture': 0}")
+    Set<ApiMongo> findSummariesByVisibility(String visibility);
+
+    @Query(value = "{ _id: {$in: ?0} }", fields = "{'definition': 0, 'picture': 0}")
+    Set<ApiMongo> findSummariesByIds(List<String> ids);
+
+    @Query(value = "{ groups: {$in: ?0} }", fields = "{'definition': 0, 'picture': 0}")
+    Set<ApiMongo> findSummariesByGroups(List<String> groupIds);
 }
 
 
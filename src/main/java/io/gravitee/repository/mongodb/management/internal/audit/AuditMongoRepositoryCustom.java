@@ -22,6 +22,9 @@ import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
+import java.util.List;
+
 /**
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com) 
  * @author GraviteeSource Team
@@ -29,4 +32,16 @@ import org.springframework.stereotype.Repository;
 public interface AuditMongoRepositoryCustom {
 
     Page<AuditMongo> search(AuditCriteria filter, Pageable pageable);
+
+    /**
+     * Returns, in descending order of <code>(createdAt, _id)</code>, the audits matching the filter which come after
+     * the given position.
+     *
+     * @param filter The filter of the audits.
+     * @param createdAt The creation date of the last audit read, or <code>null</code> to start from the most recent.
+     * @param id The id of the last audit read, or <code>null</code> to include the audits created at
+     *           <code>createdAt</code>.
+     * @param limit The maximum number of audits to return.
+     */
+    List<AuditMongo> searchAfter(AuditCriteria filter, Date createdAt, String id, int limit);
 }
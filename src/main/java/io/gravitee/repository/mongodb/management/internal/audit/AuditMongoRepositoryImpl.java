@@ -19,13 +19,14 @@ import io.gravitee.common.data.domain.Page;
 import io.gravitee.repository.management.api.search.AuditCriteria;
 import io.gravitee.repository.management.api.search.Pageable;
 import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
+import io.gravitee.repository.mongodb.management.search.MongoSearchPager;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -40,10 +41,80 @@ public class AuditMongoRepositoryImpl implements AuditMongoRepositoryCustom {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private MongoSearchPager searchPager;
+
+    @Autowired
+    private AuditPartitions partitions;
+
     @Override
     public Page<AuditMongo> search(AuditCriteria filter, Pageable pageable) {
+        if (partitions.isEnabled()) {
+            return searchPartitions(filter, pageable);
+        }
+
+        Query query = new Query();
+
+        addCriteria(query, filter, null);
+
+        query.with(new Sort(Sort.Direction.DESC, "createdAt"));
+
+        // Page numbers start at 1
+        int offset = (pageable.pageNumber() - 1 < 0 ? 0 : pageable.pageNumber() - 1) * pageable.pageSize();
+        return searchPager.page(query, AuditMongo.class, pageable.pageNumber(), offset, pageable.pageSize());
+    }
+
+    @Override
+    public List<AuditMongo> searchAfter(AuditCriteria filter, Date createdAt, String id, int limit) {
+        Query query = new Query();
+
+        addCriteria(query, filter, createdAt);
+
+        // The audits already read at createdAt are skipped
+        if (createdAt != null && id != null) {
+            query.addCriteria(new Criteria().orOperator(where("createdAt").lt(createdAt), where("_id").lt(id)));
+        }
+
+        query.with(new Sort(Sort.Direction.DESC, "createdAt").and(new Sort(Sort.Direction.DESC, "_id")));
+        query.limit(limit);
+
+        if (!partitions.isEnabled()) {
+            return mongoTemplate.find(query, AuditMongo.class);
+        }
+
+        // Partitions are read from the most recent, until the limit is reached
+        final long to = (createdAt != null) ? createdAt.getTime() : filter.getTo();
+        final List<AuditMongo> audits = new ArrayList<>(limit);
+        for (String collection : partitions.collectionsFor(filter.getFrom(), to)) {
+            query.limit(limit - audits.size());
+            audits.addAll(mongoTemplate.find(query, AuditMongo.class, collection));
+            if (audits.size() >= limit) {
+                break;
+            }
+        }
+        return audits;
+    }
+
+    /**
+     * Paged search over the partitions overlapping the date range of the filter, read from the most recent.
+     */
+    private Page<AuditMongo> searchPartitions(AuditCriteria filter, Pageable pageable) {
         Query query = new Query();
 
+        addCriteria(query, filter, null);
+
+        query.with(new Sort(Sort.Direction.DESC, "createdAt"));
+
+        // Page numbers start at 1
+        int offset = (pageable.pageNumber() - 1 < 0 ? 0 : pageable.pageNumber() - 1) * pageable.pageSize();
+        return searchPager.page(query, AuditMongo.class, partitions.collectionsFor(filter.getFrom(), filter.getTo()),
+                pageable.pageNumber(), offset, pageable.pageSize());
+    }
+
+    /**
+     * @param createdBefore An additional upper bound, inclusive, of the creation date.
+     */
+    private void addCriteria(Query query, AuditCriteria filter, Date createdBefore) {
         if (filter.getReferences() != null && !filter.getReferences().isEmpty()) {
             filter.getReferences().forEach(
                     (referenceType, referenceIds) -> query.addCriteria(
@@ -52,32 +123,21 @@ public class AuditMongoRepositoryImpl implements AuditMongoRepositoryCustom {
                             where("referenceId").in(referenceIds))));
         }
 
-        if (filter.getFrom() != 0 && filter.getTo() != 0) {
-            query.addCriteria(
-                    where("createdAt").gte(new Date(filter.getFrom())).
-                    andOperator(
-                    where("createdAt").lte(new Date(filter.getTo()))));
-        } else {
-            if (filter.getFrom() != 0) {
-                query.addCriteria(where("createdAt").gte(new Date(filter.getFrom())));
-            }
-            if (filter.getTo() != 0) {
-                query.addCriteria(where("createdAt").lte(new Date(filter.getTo())));
-            }
+        Date to = (filter.getTo() != 0) ? new Date(filter.getTo()) : null;
+        if (createdBefore != null && (to == null || createdBefore.before(to))) {
+            to = createdBefore;
+        }
+
+        if (filter.getFrom() != 0 && to != null) {
+            query.addCriteria(where("createdAt").gte(new Date(filter.getFrom())).lte(to));
+        } else if (filter.getFrom() != 0) {
+            query.addCriteria(where("createdAt").gte(new Date(filter.getFrom())));
+        } else if (to != null) {
+            query.addCriteria(where("createdAt").lte(to));
         }
 
         if (filter.getEvents() != null && !filter.getEvents().isEmpty()) {
             query.addCriteria(where("event").in(filter.getEvents()));
         }
-
-        query.with(new PageRequest(
-                pageable.pageNumber() - 1 < 0 ? 0 : pageable.pageNumber() - 1,
-                pageable.pageSize(),
-                new Sort(Sort.Direction.DESC, "createdAt")));
-
-        List<AuditMongo> audits = mongoTemplate.find(query, AuditMongo.class);
-        long total = mongoTemplate.count(query, AuditMongo.class);
-
-        return new Page<>(audits, pageable.pageNumber(), pageable.pageSize(), total);
     }
 }
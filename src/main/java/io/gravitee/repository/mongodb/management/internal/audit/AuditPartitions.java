@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.internal.audit;
+
+import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Monthly partitioning of audits, when <code>management.mongodb.audit.partitioning</code> is <code>monthly</code>.
+ *
+ * Audits are written to one collection per month of creation (UTC), named <code>audits_yyyyMM</code>. Searches only
+ * read the partitions overlapping their date range, and the unpartitioned <code>audits</code> collection, which keeps
+ * the audits written before partitioning was enabled. When <code>management.mongodb.audit.retention</code> is set,
+ * the partitions older than this number of months are dropped every day.
+ *
+ * The known partitions are cached, and updated when a partition is written to or dropped. The collections are listed
+ * again at most every minute while the partition of the current month is not known, in case another node created it.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+public class AuditPartitions {
+
+    private final Logger logger = LoggerFactory.getLogger(AuditPartitions.class);
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    private boolean enabled;
+
+    private int retention;
+
+    private String collection;
+
+    private Pattern partitionPattern;
+
+    private final Set<String> indexedPartitions = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, YearMonth> knownPartitions = new ConcurrentHashMap<>();
+
+    private volatile long lastRefresh;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        enabled = "monthly".equalsIgnoreCase(environment.getProperty("management.mongodb.audit.partitioning", "none"));
+        retention = environment.getProperty("management.mongodb.audit.retention", Integer.class, 0);
+        collection = mongoTemplate.getCollectionName(AuditMongo.class);
+        partitionPattern = Pattern.compile(Pattern.quote(collection) + "_(\\d{6})");
+
+        ensureIndexes(collection);
+        if (enabled) {
+            refresh();
+        }
+
+        if (enabled && retention > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gio.mongo-audit-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::dropExpired, 0, 1, TimeUnit.DAYS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the partition of an audit created at the given date, creating its indexes on first use.
+     */
+    public String collectionFor(Date createdAt) {
+        final YearMonth month = YearMonth.from((createdAt != null ? createdAt.toInstant() : Instant.now())
+                .atZone(ZoneOffset.UTC));
+        final String partition = collection + '_' + month.format(MONTH_FORMAT);
+
+        if (!indexedPartitions.contains(partition)) {
+            ensureIndexes(partition);
+            knownPartitions.put(partition, month);
+        }
+        return partition;
+    }
+
+    /**
+     * Returns the collections which may hold audits created in the given range, from the most recent one.
+     *
+     * @param from The lower bound of the range, or <code>0</code>.
+     * @param to The upper bound of the range, or <code>0</code>.
+     */
+    public List<String> collectionsFor(long from, long to) {
+        final YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        if (!knownPartitions.containsValue(currentMonth)
+                && System.currentTimeMillis() - lastRefresh > REFRESH_INTERVAL) {
+            refresh();
+        }
+
+        final List<String> collections = knownPartitions.entrySet().stream()
+                .filter(partition -> overlaps(partition.getValue(), from, to))
+                .sorted(Map.Entry.<String, YearMonth>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        // Audits written before partitioning was enabled, the collection is created with its indexes on start
+        collections.add(collection);
+        return collections;
+    }
+
+    /**
+     * Drops the partitions older than the retention.
+     */
+    void dropExpired() {
+        try {
+            final YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(retention - 1);
+            partitions(mongoTemplate.getCollectionNames()).forEach((partition, month) -> {
+                if (month.isBefore(oldestKept)) {
+                    logger.info("Dropping audit partition {}", partition);
+                    mongoTemplate.dropCollection(partition);
+                    indexedPartitions.remove(partition);
+                }
+            });
+            // Including the partitions already dropped by another node
+            knownPartitions.values().removeIf(month -> month.isBefore(oldestKept));
+        } catch (Exception ex) {
+            logger.error("An error occurs while dropping expired audit partitions", ex);
+        }
+    }
+
+    /**
+     * Adds the partitions which exist in the database to the known ones. A partition dropped by another node stays
+     * known until it expires here too, reading it just finds nothing.
+     */
+    private void refresh() {
+        lastRefresh = System.currentTimeMillis();
+        knownPartitions.putAll(partitions(mongoTemplate.getCollectionNames()));
+    }
+
+    /**
+     * Indexes used by the keyset search, with and without a reference filter, built in the background not to lock
+     * the partition.
+     */
+    private void ensureIndexes(String collectionName) {
+        final IndexOperations indexOps = mongoTemplate.indexOps(collectionName);
+        indexOps.ensureIndex(new Index()
+                .on("referenceType", Sort.Direction.ASC)
+                .on("referenceId", Sort.Direction.ASC)
+                .on("event", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("referenceType_1_referenceId_1_event_1_createdAt_-1__id_-1")
+                .background());
+        indexOps.ensureIndex(new Index()
+                .on("createdAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("createdAt_-1__id_-1")
+                .background());
+        indexedPartitions.add(collectionName);
+    }
+
+    private Map<String, YearMonth> partitions(Set<String> names) {
+        final Map<String, YearMonth> partitions = new HashMap<>();
+        for (String name : names) {
+            Matcher matcher = partitionPattern.matcher(name);
+            if (matcher.matches()) {
+                partitions.put(name, YearMonth.parse(matcher.group(1), MONTH_FORMAT));
+            }
+        }
+        return partitions;
+    }
+
+    private static boolean overlaps(YearMonth month, long from, long to) {
+        final long start = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        final long end = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        return (from == 0 || end > from) && (to == 0 || start <= to);
+    }
+}
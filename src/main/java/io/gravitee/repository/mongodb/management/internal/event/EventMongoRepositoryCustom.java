@@ -20,6 +20,10 @@ import io.gravitee.repository.management.api.search.EventCriteria;
 import io.gravitee.repository.management.api.search.Pageable;
 import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
 /**
  * @author Titouan COMPIEGNE (titouan.compiegne at graviteesource.com)
  * @author David BRASSELY (david.brassely at graviteesource.com)
@@ -28,4 +32,26 @@ import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
 public interface EventMongoRepositoryCustom {
 
     Page<EventMongo> search(EventCriteria filter, Pageable pageable);
+
+    /**
+     * Same as {@link #search(EventCriteria, Pageable)}, without the payload of the events.
+     */
+    Page<EventMongo> searchWithoutPayload(EventCriteria filter, Pageable pageable);
+
+    /**
+     * Returns the id, payload and payload hash of the given events.
+     */
+    List<EventMongo> findPayloads(Collection<String> ids);
+
+    /**
+     * Returns, in ascending order of <code>(updatedAt, _id)</code>, the events matching the types and properties of
+     * the filter which come after the given position. The range of the filter is not used.
+     *
+     * @param filter The types and properties of the events.
+     * @param updatedAt The update date of the last event read, or <code>null</code> to start from the beginning.
+     * @param id The id of the last event read, or <code>null</code> to include the events updated at
+     *           <code>updatedAt</code>.
+     * @param limit The maximum number of events to return.
+     */
+    List<EventMongo> findAfter(EventCriteria filter, Date updatedAt, String id, int limit);
 }
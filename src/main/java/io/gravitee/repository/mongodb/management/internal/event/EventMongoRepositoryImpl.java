@@ -19,8 +19,8 @@ import io.gravitee.common.data.domain.Page;
 import io.gravitee.repository.management.api.search.EventCriteria;
 import io.gravitee.repository.management.api.search.Pageable;
 import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import io.gravitee.repository.mongodb.management.search.MongoSearchPager;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -40,24 +40,35 @@ public class EventMongoRepositoryImpl implements EventMongoRepositoryCustom {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private MongoSearchPager searchPager;
+
     @Override
     public Page<EventMongo> search(EventCriteria filter, Pageable pageable) {
+        return search(filter, pageable, true);
+    }
+
+    @Override
+    public Page<EventMongo> searchWithoutPayload(EventCriteria filter, Pageable pageable) {
+        return search(filter, pageable, false);
+    }
+
+    @Override
+    public List<EventMongo> findPayloads(Collection<String> ids) {
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("payload").include("payloadHash");
+
+        return mongoTemplate.find(query, EventMongo.class);
+    }
+
+    private Page<EventMongo> search(EventCriteria filter, Pageable pageable, boolean withPayload) {
         Query query = new Query();
 
-        if (filter.getTypes() != null && !filter.getTypes().isEmpty()) {
-            query.addCriteria(Criteria.where("type").in(filter.getTypes()));
+        if (!withPayload) {
+            query.fields().exclude("payload").exclude("payloadHash");
         }
 
-        if (filter.getProperties() != null && !filter.getProperties().isEmpty()) {
-            // set criteria query
-            filter.getProperties().forEach((k, v) -> {
-                if (v instanceof Collection) {
-                    query.addCriteria(Criteria.where("properties." + k).in((Collection) v));
-                } else {
-                    query.addCriteria(Criteria.where("properties." + k).is(v));
-                }
-            });
-        }
+        addCriteria(query, filter);
 
         // set range query
         if (filter.getFrom() != 0 && filter.getTo() != 0) {
@@ -69,14 +80,51 @@ public class EventMongoRepositoryImpl implements EventMongoRepositoryCustom {
 
         // set pageable
         if (pageable != null) {
-            query.with(new PageRequest(pageable.pageNumber(), pageable.pageSize()));
+            return searchPager.page(query, EventMongo.class, pageable.pageNumber(),
+                    pageable.pageNumber() * pageable.pageSize(), pageable.pageSize());
+        }
+
+        return searchPager.all(query, EventMongo.class);
+    }
+
+    @Override
+    public List<EventMongo> findAfter(EventCriteria filter, Date updatedAt, String id, int limit) {
+        Query query = new Query();
+
+        if (filter != null) {
+            addCriteria(query, filter);
         }
 
-        List<EventMongo> events = mongoTemplate.find(query, EventMongo.class);
-        long total = mongoTemplate.count(query, EventMongo.class);
+        // Bounds of the (updatedAt, _id) index scan, the events already read at updatedAt are then skipped
+        if (updatedAt != null) {
+            if (id != null) {
+                query.addCriteria(Criteria.where("updatedAt").gte(updatedAt)
+                        .orOperator(Criteria.where("updatedAt").gt(updatedAt), Criteria.where("_id").gt(id)));
+            } else {
+                query.addCriteria(Criteria.where("updatedAt").gte(updatedAt));
+            }
+        }
+
+        query.with(new Sort(Sort.Direction.ASC, "updatedAt").and(new Sort(Sort.Direction.ASC, "_id")));
+        query.limit(limit);
+
+        return mongoTemplate.find(query, EventMongo.class);
+    }
+
+    private void addCriteria(Query query, EventCriteria filter) {
+        if (filter.getTypes() != null && !filter.getTypes().isEmpty()) {
+            query.addCriteria(Criteria.where("type").in(filter.getTypes()));
+        }
 
-        return new Page<>(
-                events, (pageable != null) ? pageable.pageNumber() : 0,
-                (pageable != null) ? pageable.pageSize() : 0, total);
+        if (filter.getProperties() != null && !filter.getProperties().isEmpty()) {
+            // set criteria query
+            filter.getProperties().forEach((k, v) -> {
+                if (v instanceof Collection) {
+                    query.addCriteria(Criteria.where("properties." + k).in((Collection) v));
+                } else {
+                    query.addCriteria(Criteria.where("properties." + k).is(v));
+                }
+            });
+        }
     }
 }
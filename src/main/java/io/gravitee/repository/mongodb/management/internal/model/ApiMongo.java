@@ -54,6 +54,13 @@ public class ApiMongo extends Auditable {
     
     private String picture;
 
+    /**
+     * Id of the picture in the GridFS bucket, when pictures are not stored inline.
+     */
+    private String pictureId;
+
+    private String pictureHash;
+
     private Set<String> groups;
 
     private Set<String> views;
@@ -134,6 +141,22 @@ public class ApiMongo extends Auditable {
         this.picture = picture;
     }
 
+    public String getPictureId() {
+        return pictureId;
+    }
+
+    public void setPictureId(String pictureId) {
+        this.pictureId = pictureId;
+    }
+
+    public String getPictureHash() {
+        return pictureHash;
+    }
+
+    public void setPictureHash(String pictureHash) {
+        this.pictureHash = pictureHash;
+    }
+
     public Set<String> getGroups() {
         return groups;
     }
@@ -31,6 +31,11 @@ public class EventMongo extends Auditable {
     private String id;
     private String type;
     private String payload;
+
+    /**
+     * Hash of the payload, when it is stored in the <code>event_payloads</code> collection.
+     */
+    private String payloadHash;
     private String parentId;
     private Map<String, String> properties;
 
@@ -58,6 +63,14 @@ public class EventMongo extends Auditable {
         this.payload = payload;
     }
 
+    public String getPayloadHash() {
+        return payloadHash;
+    }
+
+    public void setPayloadHash(String payloadHash) {
+        this.payloadHash = payloadHash;
+    }
+
     public String getParentId() {
         return parentId;
     }
@@ -42,6 +42,8 @@ public class UserMongo extends Auditable {
     private String firstname;
     private String lastname;
     private String picture;
+    private String pictureId;
+    private String pictureHash;
     private String source;
     private String sourceId;
     private Date lastConnectionAt;
@@ -94,6 +96,22 @@ public class UserMongo extends Auditable {
         this.picture = picture;
     }
 
+    public String getPictureId() {
+        return pictureId;
+    }
+
+    public void setPictureId(String pictureId) {
+        this.pictureId = pictureId;
+    }
+
+    public String getPictureHash() {
+        return pictureHash;
+    }
+
+    public void setPictureHash(String pictureHash) {
+        this.pictureHash = pictureHash;
+    }
+
     public String getSource() {
         return source;
     }
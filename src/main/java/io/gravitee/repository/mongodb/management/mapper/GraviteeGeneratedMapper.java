@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.mapper;
+
+import io.gravitee.repository.management.model.*;
+import io.gravitee.repository.mongodb.management.internal.model.*;
+import org.dozer.MappingException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * {@link GraviteeMapper} relying on the converters generated at build time by {@link MongoModelMapper}, without
+ * reflection.
+ *
+ * Mappings which have no generated converter are delegated to Dozer.
+ *
+ * @author GraviteeSource Team
+ */
+public class GraviteeGeneratedMapper implements GraviteeMapper {
+
+    private final Map<Class<?>, Map<Class<?>, Function<Object, Object>>> converters = new HashMap<>();
+
+    private volatile GraviteeDozerMapper dozerMapper;
+
+    public GraviteeGeneratedMapper() {
+        MongoModelMapper mapper = new MongoModelMapperImpl();
+
+        register(ApiMongo.class, Api.class, mapper::toApi);
+        register(Api.class, ApiMongo.class, mapper::toApiMongo);
+        register(ApiKeyMongo.class, ApiKey.class, mapper::toApiKey);
+        register(ApiKey.class, ApiKeyMongo.class, mapper::toApiKeyMongo);
+        register(ApplicationMongo.class, Application.class, mapper::toApplication);
+        register(Application.class, ApplicationMongo.class, mapper::toApplicationMongo);
+        register(AuditMongo.class, Audit.class, mapper::toAudit);
+        register(Audit.class, AuditMongo.class, mapper::toAuditMongo);
+        register(EventMongo.class, Event.class, mapper::toEvent);
+        register(Event.class, EventMongo.class, mapper::toEventMongo);
+        register(GroupMongo.class, Group.class, mapper::toGroup);
+        register(Group.class, GroupMongo.class, mapper::toGroupMongo);
+        register(PageMongo.class, Page.class, mapper::toPage);
+        register(Page.class, PageMongo.class, mapper::toPageMongo);
+        register(PlanMongo.class, Plan.class, mapper::toPlan);
+        register(Plan.class, PlanMongo.class, mapper::toPlanMongo);
+        register(SubscriptionMongo.class, Subscription.class, mapper::toSubscription);
+        register(Subscription.class, SubscriptionMongo.class, mapper::toSubscriptionMongo);
+        register(TagMongo.class, Tag.class, mapper::toTag);
+        register(Tag.class, TagMongo.class, mapper::toTagMongo);
+        register(TenantMongo.class, Tenant.class, mapper::toTenant);
+        register(Tenant.class, TenantMongo.class, mapper::toTenantMongo);
+        register(UserMongo.class, User.class, mapper::toUser);
+        register(User.class, UserMongo.class, mapper::toUserMongo);
+        register(ViewMongo.class, View.class, mapper::toView);
+        register(View.class, ViewMongo.class, mapper::toViewMongo);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <F, T> void register(Class<F> fromClass, Class<T> toClass, Function<F, T> converter) {
+        converters.computeIfAbsent(fromClass, clazz -> new HashMap<>()).put(toClass, (Function<Object, Object>) converter);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T map(Object source, Class<T> destinationClass) throws MappingException {
+        if (source == null)
+            return null;
+
+        Function<Object, Object> converter = converter(source.getClass(), destinationClass);
+        if (converter == null)
+            return dozerMapper().map(source, destinationClass);
+
+        return (T) converter.apply(source);
+    }
+
+    @Override
+    public void map(Object source, Object destination) throws MappingException {
+        dozerMapper().map(source, destination);
+    }
+
+    @Override
+    public <T> T map(Object source, Class<T> destinationClass, String mapId) throws MappingException {
+        return dozerMapper().map(source, destinationClass, mapId);
+    }
+
+    @Override
+    public void map(Object source, Object destination, String mapId) throws MappingException {
+        dozerMapper().map(source, destination, mapId);
+    }
+
+    @Override
+    public <T, F> Set<T> collection2set(Collection<F> elements, Class<F> formClass, Class<T> toClass) {
+        Function<F, T> converter = elementConverter(formClass, toClass);
+
+        Set<T> res = new HashSet<>();
+        for (F elt : elements) {
+            res.add(converter.apply(elt));
+        }
+        return res;
+    }
+
+    @Override
+    public <T, F> List<T> collection2list(Collection<F> elements, Class<F> formClass, Class<T> toClass) {
+        Function<F, T> converter = elementConverter(formClass, toClass);
+
+        List<T> res = new ArrayList<>(elements.size());
+        for (F elt : elements) {
+            res.add(converter.apply(elt));
+        }
+        return res;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <F, T> Function<F, T> elementConverter(Class<F> fromClass, Class<T> toClass) {
+        Function<Object, Object> converter = converter(fromClass, toClass);
+        if (converter == null) {
+            return elt -> map(elt, toClass);
+        }
+
+        return elt -> (elt == null) ? null : (T) converter.apply(elt);
+    }
+
+    private Function<Object, Object> converter(Class<?> fromClass, Class<?> toClass) {
+        Map<Class<?>, Function<Object, Object>> byDestination = converters.get(fromClass);
+        return (byDestination == null) ? null : byDestination.get(toClass);
+    }
+
+    private GraviteeDozerMapper dozerMapper() {
+        if (dozerMapper == null) {
+            synchronized (this) {
+                if (dozerMapper == null) {
+                    dozerMapper = new GraviteeDozerMapper();
+                }
+            }
+        }
+
+        return dozerMapper;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.mapper;
+
+import io.gravitee.repository.management.model.*;
+import io.gravitee.repository.mongodb.management.internal.model.*;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * Converters between the Mongo and the domain models, generated at build time.
+ *
+ * Mappings follow the ones of <code>dozer.xml</code>: properties are mapped by name and enums are stored by name.
+ * Every property of a target has to be mapped: the ones which only exist on the Mongo side are explicitly ignored,
+ * so that a property added to a model without being mapped fails the build.
+ *
+ * @author GraviteeSource Team
+ */
+@Mapper(unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface MongoModelMapper {
+
+    Api toApi(ApiMongo api);
+
+    // Pictures are stored in GridFS by the repository, metadatas have no counterpart in the domain model
+    @Mapping(target = "pictureId", ignore = true)
+    @Mapping(target = "pictureHash", ignore = true)
+    @Mapping(target = "metadatas", ignore = true)
+    ApiMongo toApiMongo(Api api);
+
+    ApiKey toApiKey(ApiKeyMongo apiKey);
+
+    ApiKeyMongo toApiKeyMongo(ApiKey apiKey);
+
+    Application toApplication(ApplicationMongo application);
+
+    ApplicationMongo toApplicationMongo(Application application);
+
+    Audit toAudit(AuditMongo audit);
+
+    // Audits are never updated
+    @Mapping(target = "updatedAt", ignore = true)
+    AuditMongo toAuditMongo(Audit audit);
+
+    Event toEvent(EventMongo event);
+
+    // Maintained by the repository when the payload is stored apart from the event
+    @Mapping(target = "payloadHash", ignore = true)
+    EventMongo toEventMongo(Event event);
+
+    Group toGroup(GroupMongo group);
+
+    GroupMongo toGroupMongo(Group group);
+
+    Page toPage(PageMongo page);
+
+    // No counterpart in the domain model
+    @Mapping(target = "title", ignore = true)
+    PageMongo toPageMongo(Page page);
+
+    Plan toPlan(PlanMongo plan);
+
+    PlanMongo toPlanMongo(Plan plan);
+
+    Subscription toSubscription(SubscriptionMongo subscription);
+
+    SubscriptionMongo toSubscriptionMongo(Subscription subscription);
+
+    Tag toTag(TagMongo tag);
+
+    TagMongo toTagMongo(Tag tag);
+
+    Tenant toTenant(TenantMongo tenant);
+
+    TenantMongo toTenantMongo(Tenant tenant);
+
+    @Mapping(source = "name", target = "username")
+    User toUser(UserMongo user);
+
+    // Pictures are stored in GridFS by the repository
+    @Mapping(source = "username", target = "name")
+    @Mapping(target = "pictureId", ignore = true)
+    @Mapping(target = "pictureHash", ignore = true)
+    UserMongo toUserMongo(User user);
+
+    View toView(ViewMongo view);
+
+    ViewMongo toViewMongo(View view);
+
+    /*
+     * Plan and Subscription both declare a nested Status enum, which the generated code cannot import under the same
+     * simple name.
+     */
+
+    default Plan.Status toPlanStatus(String status) {
+        return (status == null) ? null : Plan.Status.valueOf(status);
+    }
+
+    default Subscription.Status toSubscriptionStatus(String status) {
+        return (status == null) ? null : Subscription.Status.valueOf(status);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.search;
+
+/**
+ * How the total of a paged search is computed, set with <code>management.mongodb.search.count</code>.
+ *
+ * @author GraviteeSource Team
+ */
+public enum CountMode {
+
+    /**
+     * The matching documents are counted.
+     */
+    EXACT,
+
+    /**
+     * No count: the total is the number of documents up to the end of the page, plus one if there is a next page.
+     */
+    NONE,
+
+    /**
+     * The matching documents are counted up to a limit.
+     */
+    BOUNDED,
+
+    /**
+     * The documents of the collection are counted from its metadata when the search has no criteria, and up to a
+     * limit otherwise.
+     */
+    ESTIMATED
+}
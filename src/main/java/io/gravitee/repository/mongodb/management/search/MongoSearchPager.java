@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.search;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import io.gravitee.common.data.domain.Page;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs paged searches. Unless the {@link CountMode} is {@link CountMode#EXACT}, one more document than the page
+ * size is fetched to know if there is a next page, and the matching documents are not all counted.
+ *
+ * @author GraviteeSource Team
+ */
+@Component
+public class MongoSearchPager {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    private CountMode countMode;
+
+    private int countLimit;
+
+    @PostConstruct
+    public void init() {
+        countMode = CountMode.valueOf(environment.getProperty("management.mongodb.search.count", "exact").toUpperCase());
+        countLimit = environment.getProperty("management.mongodb.search.countLimit", Integer.class, 10000);
+    }
+
+    /**
+     * @param query The query, with its sort but without skip nor limit.
+     * @param entityClass The class of the documents.
+     * @param pageNumber The page number to report in the returned page.
+     * @param offset The number of documents before the page.
+     * @param pageSize The size of the page.
+     */
+    public <T> SearchPage<T> page(Query query, Class<T> entityClass, int pageNumber, int offset, int pageSize) {
+        if (countMode == CountMode.EXACT) {
+            query.skip(offset).limit(pageSize);
+            List<T> content = mongoTemplate.find(query, entityClass);
+            long total = mongoTemplate.count(query, entityClass);
+
+            return new SearchPage<>(content, pageNumber, pageSize, total, offset + content.size() < total, true);
+        }
+
+        query.skip(offset).limit(pageSize + 1);
+        List<T> content = mongoTemplate.find(query, entityClass);
+        boolean hasNext = content.size() > pageSize;
+        if (hasNext) {
+            content = content.subList(0, pageSize);
+        }
+
+        long reached = offset + content.size();
+        if (!hasNext) {
+            return new SearchPage<>(content, pageNumber, pageSize, reached, false, true);
+        }
+
+        switch (countMode) {
+            case ESTIMATED:
+                if (query.getQueryObject().keySet().isEmpty()) {
+                    long estimated = collection(entityClass).getCount();
+                    return new SearchPage<>(content, pageNumber, pageSize, Math.max(estimated, reached + 1), true, false);
+                }
+                // A filtered search can not be estimated, it is counted up to the limit
+            case BOUNDED:
+                long counted = collection(entityClass).count(mappedQuery(query, entityClass),
+                        new DBCollectionCountOptions().limit(countLimit));
+                return new SearchPage<>(content, pageNumber, pageSize, Math.max(counted, reached + 1), true,
+                        counted < countLimit);
+            default:
+                return new SearchPage<>(content, pageNumber, pageSize, reached + 1, true, false);
+        }
+    }
+
+    /**
+     * Runs a paged search over several collections, read one after the other as if they were a single one. The
+     * collections before the page are only counted up to the number of documents left to skip, and the following
+     * ones are not read once the page is filled, unless the {@link CountMode} is {@link CountMode#EXACT}, in which
+     * case they are all counted.
+     *
+     * @param query The query, with its sort but without skip nor limit.
+     * @param entityClass The class of the documents.
+     * @param collections The collections, in the order of the search.
+     * @param pageNumber The page number to report in the returned page.
+     * @param offset The number of documents before the page.
+     * @param pageSize The size of the page.
+     */
+    public <T> SearchPage<T> page(Query query, Class<T> entityClass, List<String> collections, int pageNumber,
+                                  int offset, int pageSize) {
+        final DBObject mappedQuery = mappedQuery(query, entityClass);
+        final boolean exact = countMode == CountMode.EXACT;
+        // One more document than the page size tells if there is a next page
+        final int wanted = exact ? pageSize : pageSize + 1;
+
+        List<T> content = new ArrayList<>(wanted);
+        long toSkip = offset;
+        long total = 0;
+
+        for (String collection : collections) {
+            if (!exact && content.size() >= wanted) {
+                break;
+            }
+
+            long count = -1;
+            if (exact) {
+                count = mongoTemplate.getCollection(collection).count(mappedQuery);
+                total += count;
+            }
+
+            if (toSkip > 0) {
+                if (count < 0) {
+                    // Only tells whether the whole collection is before the page
+                    count = mongoTemplate.getCollection(collection).count(mappedQuery,
+                            new DBCollectionCountOptions().limit((int) Math.min(toSkip + 1, Integer.MAX_VALUE)));
+                }
+                if (count <= toSkip) {
+                    toSkip -= count;
+                    continue;
+                }
+            }
+
+            if (content.size() < wanted) {
+                query.skip((int) toSkip).limit(wanted - content.size());
+                content.addAll(mongoTemplate.find(query, entityClass, collection));
+                toSkip = 0;
+            }
+        }
+
+        if (exact) {
+            return new SearchPage<>(content, pageNumber, pageSize, total, offset + content.size() < total, true);
+        }
+
+        boolean hasNext = content.size() > pageSize;
+        if (hasNext) {
+            content = content.subList(0, pageSize);
+        }
+
+        long reached = offset + content.size();
+        if (!hasNext) {
+            return new SearchPage<>(content, pageNumber, pageSize, reached, false, true);
+        }
+
+        switch (countMode) {
+            case ESTIMATED:
+                // Several collections can not be estimated at once, they are counted up to the limit
+            case BOUNDED:
+                long counted = 0;
+                for (String collection : collections) {
+                    counted += mongoTemplate.getCollection(collection).count(mappedQuery,
+                            new DBCollectionCountOptions().limit((int) (countLimit - counted)));
+                    if (counted >= countLimit) {
+                        break;
+                    }
+                }
+                return new SearchPage<>(content, pageNumber, pageSize, Math.max(counted, reached + 1), true,
+                        counted < countLimit);
+            default:
+                return new SearchPage<>(content, pageNumber, pageSize, reached + 1, true, false);
+        }
+    }
+
+    /**
+     * Runs an unpaged search, without counting the documents.
+     */
+    public <T> Page<T> all(Query query, Class<T> entityClass) {
+        List<T> content = mongoTemplate.find(query, entityClass);
+        return new SearchPage<>(content, 0, 0, content.size(), false, true);
+    }
+
+    private DBCollection collection(Class<?> entityClass) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass));
+    }
+
+    private DBObject mappedQuery(Query query, Class<?> entityClass) {
+        return new QueryMapper(mongoTemplate.getConverter()).getMappedObject(query.getQueryObject(),
+                mongoTemplate.getConverter().getMappingContext().getPersistentEntity(entityClass));
+    }
+}
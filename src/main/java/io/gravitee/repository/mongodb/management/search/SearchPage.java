@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.search;
+
+import io.gravitee.common.data.domain.Page;
+
+import java.util.List;
+
+/**
+ * A {@link Page} which tells whether there is a next page, and whether its total is exact or only a lower bound or
+ * an estimation, depending on the {@link CountMode} of the search.
+ *
+ * @author GraviteeSource Team
+ */
+public class SearchPage<T> extends Page<T> {
+
+    private final boolean hasNext;
+    private final boolean totalExact;
+
+    public SearchPage(List<T> content, int pageNumber, int pageElements, long total, boolean hasNext,
+                      boolean totalExact) {
+        super(content, pageNumber, pageElements, total);
+        this.hasNext = hasNext;
+        this.totalExact = totalExact;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    /**
+     * Returns a page with the same position and total as the given one, and the given content.
+     */
+    public static <T, R> Page<R> withContent(Page<T> page, List<R> content) {
+        if (page instanceof SearchPage) {
+            SearchPage<T> searchPage = (SearchPage<T>) page;
+            return new SearchPage<>(content, page.getPageNumber(), (int) page.getPageElements(),
+                    page.getTotalElements(), searchPage.hasNext(), searchPage.isTotalExact());
+        }
+
+        return new Page<>(content, page.getPageNumber(), (int) page.getPageElements(), page.getTotalElements());
+    }
+}
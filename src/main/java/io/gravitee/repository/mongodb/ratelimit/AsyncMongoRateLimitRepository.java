@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOptions;
+import io.gravitee.repository.ratelimit.api.RateLimitRepository;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.data.util.CloseableIterator;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Rate-limit repository built on the callback-based asynchronous driver.
+ *
+ * {@link #getAsync(String)} and {@link #saveAsync(RateLimit)} do not hold the calling thread while the request is
+ * in flight: the returned future is completed by the driver once the response has been received. The blocking
+ * methods of {@link RateLimitRepository} are still available: they wait for these futures at most
+ * <code>ratelimit.mongodb.async.timeout</code> milliseconds, so that a lost callback cannot hold the caller forever.
+ *
+ * @author GraviteeSource Team
+ */
+public class AsyncMongoRateLimitRepository implements RateLimitRepository {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AsyncMongoRateLimitRepository.class);
+
+    @Autowired
+    @Qualifier("rateLimitAsyncCollection")
+    private MongoCollection<RateLimit> rateLimitCollection;
+
+    @Autowired
+    private RateLimitSchema schema;
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * When using the compact schema, rate-limits which are not found are also looked for in the legacy schema.
+     */
+    private boolean legacyFallback;
+
+    private int asyncBatchSize;
+
+    /**
+     * Maximum time, in milliseconds, the blocking methods wait for a response.
+     */
+    private long timeout;
+
+    private final static UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private final static BsonInt32 ONE = new BsonInt32(1);
+
+    @PostConstruct
+    public void initSchema() {
+        legacyFallback = schema.compact &&
+                environment.getProperty("ratelimit.mongodb.schema.legacyFallback", Boolean.class, true);
+        asyncBatchSize = environment.getProperty("ratelimit.mongodb.async.batchSize", Integer.class, 1000);
+        timeout = environment.getProperty("ratelimit.mongodb.async.timeout", Long.class, 5000L);
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        // To expire Documents at a Specific Clock Time we have to specify an expireAfterSeconds value of 0.
+        createIndex(new BsonDocument(schema.resetTime, ONE), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+
+        // Only asynchronous rate-limits are looked for by update date
+        createIndex(new BsonDocument(schema.updatedAt, ONE), new IndexOptions()
+                .partialFilterExpression(new BsonDocument(schema.async, BsonBoolean.TRUE)));
+
+        if (schema.compact) {
+            // Legacy documents may still be synchronized during the migration
+            RateLimitSchema legacy = RateLimitSchema.LEGACY;
+            createIndex(new BsonDocument(legacy.updatedAt, ONE), new IndexOptions()
+                    .partialFilterExpression(new BsonDocument(legacy.async, BsonBoolean.TRUE)));
+        }
+    }
+
+    private void createIndex(Bson keys, IndexOptions options) {
+        // Built in the background, not to lock the collection while the gateway starts
+        rateLimitCollection.createIndex(keys, options.background(true), (name, throwable) -> {
+            if (throwable != null) {
+                LOGGER.error("Unable to create index {} on rate-limits", keys, throwable);
+            }
+        });
+    }
+
+    @Override
+    public RateLimit get(String rateLimitKey) {
+        return await(getAsync(rateLimitKey));
+    }
+
+    @Override
+    public void save(RateLimit rateLimit) {
+        await(saveAsync(rateLimit));
+    }
+
+    /**
+     * Gets a rate-limit without blocking the calling thread.
+     *
+     * @param rateLimitKey The rate-limit key.
+     * @return A future completed with the rate-limit, or with a new rate-limit if there is none for this key.
+     */
+    public CompletableFuture<RateLimit> getAsync(String rateLimitKey) {
+        CompletableFuture<RateLimit> future = first(schema.byKey(rateLimitKey));
+
+        if (legacyFallback) {
+            future = future.thenCompose(rateLimit -> (rateLimit != null) ? CompletableFuture.completedFuture(rateLimit) :
+                    first(RateLimitSchema.LEGACY.byKey(rateLimitKey)));
+        }
+
+        return future.thenApply(rateLimit -> (rateLimit == null) ? new RateLimit(rateLimitKey) : rateLimit);
+    }
+
+    /**
+     * Saves a rate-limit without blocking the calling thread.
+     *
+     * @param rateLimit The rate-limit to save.
+     * @return A future completed once the rate-limit has been written.
+     */
+    public CompletableFuture<Void> saveAsync(RateLimit rateLimit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        rateLimitCollection.replaceOne(schema.byKey(rateLimit.getKey()), rateLimit, UPSERT,
+                (result, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(null);
+                    }
+                });
+
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned iterator is a {@link CloseableIterator}: callers which stop before the end have to close it to
+     * release the underlying cursor.
+     */
+    @Override
+    public CloseableIterator<RateLimit> findAsyncAfter(long timestamp) {
+        CompletableFuture<AsyncBatchCursor<RateLimit>> future = new CompletableFuture<>();
+        rateLimitCollection
+                .find(schema.asyncAfter(timestamp, legacyFallback))
+                .projection(schema.asyncProjection(legacyFallback))
+                .batchSize(asyncBatchSize)
+                .batchCursor((cursor, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(cursor);
+                    }
+                });
+
+        final AsyncBatchCursor<RateLimit> cursor = await(future);
+
+        return new CloseableIterator<RateLimit>() {
+
+            private Iterator<RateLimit> batch = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (! batch.hasNext()) {
+                    if (cursor.isClosed()) {
+                        return false;
+                    }
+
+                    List<RateLimit> rateLimits = await(nextBatch(cursor));
+                    if (rateLimits == null) {
+                        cursor.close();
+                        return false;
+                    }
+
+                    batch = rateLimits.iterator();
+                }
+
+                return true;
+            }
+
+            @Override
+            public RateLimit next() {
+                if (! hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return batch.next();
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    private CompletableFuture<RateLimit> first(Bson query) {
+        CompletableFuture<RateLimit> future = new CompletableFuture<>();
+
+        rateLimitCollection.find(query).first((rateLimit, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+            } else {
+                future.complete(rateLimit);
+            }
+        });
+
+        return future;
+    }
+
+    private static CompletableFuture<List<RateLimit>> nextBatch(AsyncBatchCursor<RateLimit> cursor) {
+        CompletableFuture<List<RateLimit>> future = new CompletableFuture<>();
+
+        cursor.next((rateLimits, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+            } else {
+                future.complete(rateLimits);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Waits for a future at most {@link #timeout} milliseconds, rethrowing the driver exception it has been completed
+     * with, if any.
+     */
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+
+            throw new IllegalStateException(ee.getCause());
+        } catch (TimeoutException te) {
+            throw new MongoTimeoutException("No response received from MongoDB after " + timeout + " ms");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while waiting for MongoDB", ie);
+        }
+    }
+}
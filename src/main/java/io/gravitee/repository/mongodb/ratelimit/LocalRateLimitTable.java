@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * In-memory rate-limits used while the rate-limit database is unavailable.
+ *
+ * Besides the state of each rate-limit, the table keeps track of the calls counted locally, so that they can be
+ * added to the shared counters once the database is back. While the database is available, the table is seeded with
+ * the rate-limits read from it, so that only the calls counted after a failure are added back.
+ *
+ * @author GraviteeSource Team
+ */
+class LocalRateLimitTable {
+
+    /**
+     * Number of seeds between two removals of the rate-limits whose window is over.
+     */
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger seeds = new AtomicInteger();
+
+    RateLimit get(String rateLimitKey) {
+        Entry entry = entries.get(rateLimitKey);
+        if (entry == null) {
+            return new RateLimit(rateLimitKey);
+        }
+
+        synchronized (entry) {
+            return new RateLimit(entry.rateLimit);
+        }
+    }
+
+    /**
+     * Records the state of a rate-limit as known by the database.
+     *
+     * @return The given rate-limit.
+     */
+    RateLimit seed(RateLimit rateLimit) {
+        if (rateLimit == null) {
+            return null;
+        }
+
+        Entry entry = entries.computeIfAbsent(rateLimit.getKey(), key -> new Entry(new RateLimit(key)));
+        synchronized (entry) {
+            if (entry.rateLimit.getResetTime() != rateLimit.getResetTime()) {
+                entry.delta = 0;
+            }
+            entry.rateLimit = new RateLimit(rateLimit);
+        }
+
+        if (seeds.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purge();
+        }
+
+        return rateLimit;
+    }
+
+    /**
+     * Saves a rate-limit locally. Only the difference with the last known state of its window is counted as local
+     * calls: the counter of a rate-limit read from the database before the failure already includes the calls held by
+     * the database.
+     */
+    void save(RateLimit rateLimit) {
+        Entry entry = entries.computeIfAbsent(rateLimit.getKey(), key -> new Entry(new RateLimit(key)));
+
+        synchronized (entry) {
+            if (entry.rateLimit.getResetTime() == rateLimit.getResetTime()) {
+                entry.delta += rateLimit.getCounter() - entry.rateLimit.getCounter();
+            } else {
+                // A new window has been started locally
+                entry.delta = rateLimit.getCounter();
+            }
+            entry.rateLimit = new RateLimit(rateLimit);
+        }
+    }
+
+    RateLimit incrementAndGet(String rateLimitKey, long weight, long resetTime, boolean async) {
+        Entry entry = entries.computeIfAbsent(rateLimitKey, key -> new Entry(new RateLimit(key)));
+        long now = System.currentTimeMillis();
+
+        synchronized (entry) {
+            RateLimit rateLimit = entry.rateLimit;
+            if (rateLimit.getResetTime() <= now) {
+                rateLimit.setCounter(0);
+                rateLimit.setResetTime(resetTime);
+                rateLimit.setCreatedAt(now);
+                entry.delta = 0;
+            }
+
+            rateLimit.setCounter(rateLimit.getCounter() + weight);
+            rateLimit.setLastRequest(now);
+            rateLimit.setUpdatedAt(now);
+            rateLimit.setAsync(async);
+            entry.delta += weight;
+
+            return new RateLimit(rateLimit);
+        }
+    }
+
+    /**
+     * Takes back calls counted locally which have been written to the database in the end, by a call given up after
+     * its timeout, so that they are not added again when reconciling.
+     *
+     * @param written The rate-limit as stored by the database after the call.
+     * @param weight The calls counted by both the database and the table.
+     */
+    void discount(RateLimit written, long weight) {
+        Entry entry = entries.get(written.getKey());
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (entry) {
+            if (entry.rateLimit.getResetTime() == written.getResetTime()) {
+                entry.delta = Math.max(0, entry.delta - weight);
+            }
+        }
+    }
+
+    /**
+     * Removes every rate-limit from the table and gives the calls which have been counted locally, in the current
+     * window of each rate-limit, to the consumer.
+     */
+    void drain(Consumer<RateLimit> consumer) {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+
+            RateLimit delta;
+            synchronized (entry) {
+                if (entry.delta <= 0 || entry.rateLimit.getResetTime() <= now) {
+                    continue;
+                }
+
+                delta = new RateLimit(entry.rateLimit);
+                delta.setCounter(entry.delta);
+            }
+
+            consumer.accept(delta);
+        }
+    }
+
+    private void purge() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> {
+            synchronized (entry) {
+                // Calls counted in a window which is over are not reconciled anyway
+                return entry.rateLimit.getResetTime() <= now;
+            }
+        });
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+
+        private RateLimit rateLimit;
+        private long delta;
+
+        private Entry(RateLimit rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+    }
+}
@@ -16,19 +16,47 @@
 package io.gravitee.repository.mongodb.ratelimit;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
 import io.gravitee.repository.ratelimit.api.RateLimitRepository;
 import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.Date;
-import java.util.Iterator;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
@@ -37,103 +65,677 @@ import java.util.Iterator;
 @Component
 public class MongoRateLimitRepository implements RateLimitRepository {
 
+    private final Logger LOGGER = LoggerFactory.getLogger(MongoRateLimitRepository.class);
+
     @Autowired
     @Qualifier("rateLimitMongoTemplate")
     private MongoOperations mongoOperations;
 
-    private final static String RATE_LIMIT_COLLECTION = "ratelimit";
+    @Autowired
+    @Qualifier("rateLimitCollection")
+    private MongoCollection<RateLimit> rateLimitCollection;
+
+    @Autowired
+    private RateLimitSchema schema;
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * When using the compact schema, rate-limits which are not found are also looked for in the legacy schema.
+     */
+    private volatile boolean legacyFallback;
+
+    private long legacyCheckInterval;
+
+    private volatile long legacyCheckedAt;
+
+    private int asyncBatchSize;
+
+    private RateLimitWriteBehind writeBehind;
+
+    private RateLimitNearCache nearCache;
+
+    private RateLimitLeaseManager leaseManager;
 
-    private final static String FIELD_KEY = "_id";
-    private final static String FIELD_COUNTER = "counter";
-    private final static String FIELD_RESET_TIME = "reset_time";
-    private final static String FIELD_LAST_REQUEST = "last_request";
-    private final static String FIELD_UPDATED_AT = "updated_at";
-    private final static String FIELD_CREATED_AT = "created_at";
-    private final static String FIELD_ASYNC = "async";
+    private RateLimitCircuitBreaker circuitBreaker;
+
+    private LocalRateLimitTable localTable;
+
+    private ExecutorService reconcileExecutor;
+
+    final static String RATE_LIMIT_COLLECTION = "ratelimit";
+
+    /**
+     * Maximum number of attempts of an increment losing a race against concurrent window creations.
+     */
+    private final static int MAX_INCREMENT_ATTEMPTS = 10;
+
+    private final static UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private final static BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    @PostConstruct
+    public void initSchema() {
+        legacyFallback = schema.compact &&
+                environment.getProperty("ratelimit.mongodb.schema.legacyFallback", Boolean.class, true);
+        legacyCheckInterval = environment.getProperty("ratelimit.mongodb.schema.legacyCheckInterval", Long.class,
+                60000L);
+        asyncBatchSize = environment.getProperty("ratelimit.mongodb.async.batchSize", Integer.class, 1000);
+    }
 
     @PostConstruct
     public void ensureTTLIndex() {
         mongoOperations.indexOps(RATE_LIMIT_COLLECTION).ensureIndex(new IndexDefinition() {
             @Override
             public DBObject getIndexKeys() {
-                return new BasicDBObject(FIELD_RESET_TIME, 1);
+                return new BasicDBObject(schema.resetTime, 1);
             }
 
             @Override
             public DBObject getIndexOptions() {
                 // To expire Documents at a Specific Clock Time we have to specify an expireAfterSeconds value of 0.
-                return new BasicDBObject("expireAfterSeconds", 0);
+                // Built in the background, not to lock the collection while the gateway starts
+                return new BasicDBObject("expireAfterSeconds", 0).append("background", true);
             }
         });
     }
 
+    @PostConstruct
+    public void ensureAsyncIndex() {
+        ensureAsyncIndex(schema);
+
+        if (schema.compact) {
+            // Legacy documents may still be synchronized during the migration
+            ensureAsyncIndex(RateLimitSchema.LEGACY);
+        }
+    }
+
+    private void ensureAsyncIndex(RateLimitSchema schema) {
+        mongoOperations.indexOps(RATE_LIMIT_COLLECTION).ensureIndex(new IndexDefinition() {
+            @Override
+            public DBObject getIndexKeys() {
+                return new BasicDBObject(schema.updatedAt, 1);
+            }
+
+            @Override
+            public DBObject getIndexOptions() {
+                // Only asynchronous rate-limits are looked for by update date
+                return new BasicDBObject("partialFilterExpression", new BasicDBObject(schema.async, true))
+                        .append("background", true);
+            }
+        });
+    }
+
+    @PostConstruct
+    public void initWriteBehind() {
+        if (environment.getProperty("ratelimit.mongodb.writeBehind.enabled", Boolean.class, false)) {
+            writeBehind = new RateLimitWriteBehind(
+                    this::write,
+                    environment.getProperty("ratelimit.mongodb.writeBehind.flushInterval", Long.class, 1000L),
+                    environment.getProperty("ratelimit.mongodb.writeBehind.maxBatchSize", Integer.class, 1000),
+                    environment.getProperty("ratelimit.mongodb.writeBehind.maxBufferedKeys", Integer.class, 100000));
+            writeBehind.start();
+        }
+    }
+
+    @PostConstruct
+    public void initNearCache() {
+        if (environment.getProperty("ratelimit.mongodb.cache.enabled", Boolean.class, false)) {
+            nearCache = new RateLimitNearCache(
+                    environment.getProperty("ratelimit.mongodb.cache.maxSize", Integer.class, 10000),
+                    environment.getProperty("ratelimit.mongodb.cache.timeToLive", Long.class, 0L));
+        }
+    }
+
+    @PostConstruct
+    public void initLeasing() {
+        if (environment.getProperty("ratelimit.mongodb.lease.enabled", Boolean.class, false)) {
+            leaseManager = new RateLimitLeaseManager(
+                    this,
+                    environment.getProperty("ratelimit.mongodb.lease.initialChunk", Long.class, 50L),
+                    environment.getProperty("ratelimit.mongodb.lease.minChunk", Long.class, 10L),
+                    environment.getProperty("ratelimit.mongodb.lease.maxChunk", Long.class, 1000L),
+                    environment.getProperty("ratelimit.mongodb.lease.targetDuration", Long.class, 1000L));
+        }
+    }
+
+    @PostConstruct
+    public void initFailover() {
+        if (environment.getProperty("ratelimit.mongodb.failover.enabled", Boolean.class, false)) {
+            localTable = new LocalRateLimitTable();
+            reconcileExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gio.ratelimit-reconcile");
+                thread.setDaemon(true);
+                return thread;
+            });
+            circuitBreaker = new RateLimitCircuitBreaker(
+                    environment.getProperty("ratelimit.mongodb.failover.windowSize", Integer.class, 100),
+                    environment.getProperty("ratelimit.mongodb.failover.minCalls", Integer.class, 20),
+                    environment.getProperty("ratelimit.mongodb.failover.errorRateThreshold", Integer.class, 50),
+                    environment.getProperty("ratelimit.mongodb.failover.latencyThreshold", Long.class, 250L),
+                    environment.getProperty("ratelimit.mongodb.failover.openDuration", Long.class, 5000L),
+                    environment.getProperty("ratelimit.mongodb.failover.callTimeout", Long.class, 1000L),
+                    environment.getProperty("ratelimit.mongodb.failover.threads", Integer.class,
+                            Runtime.getRuntime().availableProcessors() * 2),
+                    () -> reconcileExecutor.execute(this::reconcile));
+        }
+    }
+
+    @PreDestroy
+    public void stopWriteBehind() {
+        if (writeBehind != null) {
+            writeBehind.stop();
+        }
+    }
+
+    @PreDestroy
+    public void stopFailover() {
+        if (circuitBreaker != null) {
+            circuitBreaker.stop();
+        }
+
+        if (reconcileExecutor != null) {
+            reconcileExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public RateLimit get(String rateLimitKey) {
-        DBObject result = mongoOperations
-                .getCollection(RATE_LIMIT_COLLECTION)
-                .findOne(rateLimitKey);
+        if (nearCache != null) {
+            RateLimit cached = nearCache.get(rateLimitKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        RateLimit rateLimit = new RateLimit(rateLimitKey);
+        if (writeBehind != null) {
+            RateLimit pending = writeBehind.get(rateLimitKey);
+            if (pending != null) {
+                return pending;
+            }
+        }
 
-        if (result != null) {
-            rateLimit.setCounter((long) result.get(FIELD_COUNTER));
-            rateLimit.setLastRequest((long) result.get(FIELD_LAST_REQUEST));
-            rateLimit.setResetTime(((Date) result.get(FIELD_RESET_TIME)).getTime());
-            rateLimit.setUpdatedAt((long) result.get(FIELD_UPDATED_AT));
-            rateLimit.setCreatedAt((long) result.get(FIELD_CREATED_AT));
-            rateLimit.setAsync((boolean) result.get(FIELD_ASYNC));
+        if (circuitBreaker != null) {
+            return cache(circuitBreaker.execute(
+                    () -> localTable.seed(loadOrCreate(rateLimitKey)), () -> localTable.get(rateLimitKey)));
         }
 
-        return rateLimit;
+        return cache(loadOrCreate(rateLimitKey));
     }
 
     @Override
     public void save(RateLimit rateLimit) {
-        final DBObject doc = BasicDBObjectBuilder.start()
-                .add(FIELD_KEY, rateLimit.getKey())
-                .add(FIELD_COUNTER, rateLimit.getCounter())
-                .add(FIELD_LAST_REQUEST, rateLimit.getLastRequest())
-                .add(FIELD_RESET_TIME, new Date(rateLimit.getResetTime()))
-                .add(FIELD_UPDATED_AT, rateLimit.getUpdatedAt())
-                .add(FIELD_CREATED_AT, rateLimit.getCreatedAt())
-                .add(FIELD_ASYNC, rateLimit.isAsync())
-                .get();
+        cache(rateLimit);
+
+        if (writeBehind != null && writeBehind.offer(rateLimit)) {
+            return;
+        }
 
-        mongoOperations
-                .getCollection(RATE_LIMIT_COLLECTION)
-                .save(doc);
+        if (circuitBreaker != null) {
+            circuitBreaker.execute(
+                    () -> {
+                        rateLimitCollection.replaceOne(schema.byKey(rateLimit.getKey()), rateLimit, UPSERT);
+                        localTable.seed(rateLimit);
+                    },
+                    () -> localTable.save(rateLimit));
+        } else {
+            rateLimitCollection.replaceOne(schema.byKey(rateLimit.getKey()), rateLimit, UPSERT);
+        }
     }
 
-    @Override
-    public Iterator<RateLimit> findAsyncAfter(long timestamp) {
-        DBObject query = BasicDBObjectBuilder
-                .start(FIELD_ASYNC, true)
-                .add(FIELD_UPDATED_AT, BasicDBObjectBuilder.start("$gte", timestamp).get())
-                .get();
+    /**
+     * Gets several rate-limits at once, with a single query for the keys which are not known locally.
+     *
+     * @param rateLimitKeys The rate-limit keys.
+     * @return The rate-limits by key. Like {@link #get(String)}, a new rate-limit is returned for an unknown key.
+     */
+    public Map<String, RateLimit> get(Collection<String> rateLimitKeys) {
+        final Map<String, RateLimit> rateLimits = new HashMap<>(rateLimitKeys.size());
+        final List<String> missingKeys = new ArrayList<>(rateLimitKeys.size());
+
+        for (String rateLimitKey : rateLimitKeys) {
+            RateLimit rateLimit = (nearCache != null) ? nearCache.get(rateLimitKey) : null;
+            if (rateLimit == null && writeBehind != null) {
+                rateLimit = writeBehind.get(rateLimitKey);
+            }
+
+            if (rateLimit != null) {
+                rateLimits.put(rateLimitKey, rateLimit);
+            } else {
+                missingKeys.add(rateLimitKey);
+            }
+        }
+
+        if (! missingKeys.isEmpty()) {
+            if (circuitBreaker != null) {
+                rateLimits.putAll(circuitBreaker.execute(() -> {
+                    Map<String, RateLimit> loaded = load(missingKeys);
+                    loaded.values().forEach(localTable::seed);
+                    return loaded;
+                }, () -> {
+                    Map<String, RateLimit> local = new HashMap<>(missingKeys.size());
+                    missingKeys.forEach(rateLimitKey -> local.put(rateLimitKey, localTable.get(rateLimitKey)));
+                    return local;
+                }));
+            } else {
+                rateLimits.putAll(load(missingKeys));
+            }
+        }
+
+        return rateLimits;
+    }
+
+    private Map<String, RateLimit> load(List<String> rateLimitKeys) {
+        final Map<String, RateLimit> rateLimits = new HashMap<>(rateLimitKeys.size());
+
+        List<BsonValue> ids = new ArrayList<>(rateLimitKeys.size());
+        rateLimitKeys.forEach(rateLimitKey -> ids.add(schema.id(rateLimitKey)));
+
+        for (RateLimit rateLimit : rateLimitCollection.find(Filters.in(RateLimitSchema.FIELD_ID, ids))) {
+            rateLimits.put(rateLimit.getKey(), cache(rateLimit));
+        }
+
+        if (legacyFallback) {
+            List<String> legacyKeys = new ArrayList<>(rateLimitKeys);
+            legacyKeys.removeAll(rateLimits.keySet());
+
+            if (! legacyKeys.isEmpty()) {
+                for (RateLimit rateLimit : rateLimitCollection.find(Filters.in(RateLimitSchema.FIELD_ID, legacyKeys))) {
+                    rateLimits.put(rateLimit.getKey(), cache(rateLimit));
+                }
+            }
+        }
+
+        rateLimitKeys.forEach(rateLimitKey -> rateLimits.computeIfAbsent(rateLimitKey, RateLimit::new));
+
+        return rateLimits;
+    }
+
+    /**
+     * Saves several rate-limits at once, with a single bulk write.
+     *
+     * @param rateLimits The rate-limits to save.
+     */
+    public void save(Collection<RateLimit> rateLimits) {
+        final List<RateLimit> toWrite = new ArrayList<>(rateLimits.size());
+
+        for (RateLimit rateLimit : rateLimits) {
+            cache(rateLimit);
+
+            if (writeBehind == null || ! writeBehind.offer(rateLimit)) {
+                toWrite.add(rateLimit);
+            }
+        }
+
+        if (! toWrite.isEmpty()) {
+            if (circuitBreaker != null) {
+                circuitBreaker.execute(() -> {
+                    write(toWrite);
+                    toWrite.forEach(localTable::seed);
+                }, () -> toWrite.forEach(localTable::save));
+            } else {
+                write(toWrite);
+            }
+        }
+    }
 
-        final Iterator<DBObject> dbObjects = mongoOperations
-                .getCollection(RATE_LIMIT_COLLECTION)
-                .find(query).iterator();
+    /**
+     * {@inheritDoc}
+     *
+     * The returned iterator is a {@link CloseableIterator}: callers which stop before the end have to close it to
+     * release the underlying cursor.
+     */
+    @Override
+    public CloseableIterator<RateLimit> findAsyncAfter(long timestamp) {
+        final MongoCursor<RateLimit> cursor = rateLimitCollection
+                .find(schema.asyncAfter(timestamp, legacyFallback))
+                .projection(schema.asyncProjection(legacyFallback))
+                .batchSize(asyncBatchSize)
+                .iterator();
 
-        return new Iterator<RateLimit>() {
+        return new CloseableIterator<RateLimit>() {
 
             @Override
             public boolean hasNext() {
-                return dbObjects.hasNext();
+                if (cursor.hasNext()) {
+                    return true;
+                }
+
+                cursor.close();
+                return false;
             }
 
             @Override
             public RateLimit next() {
-                DBObject dbObject = dbObjects.next();
-                RateLimit rateLimit = new RateLimit((String) dbObject.get(FIELD_KEY));
-                rateLimit.setCounter((long) dbObject.get(FIELD_COUNTER));
-                rateLimit.setLastRequest((long) dbObject.get(FIELD_LAST_REQUEST));
-                rateLimit.setResetTime(((Date) dbObject.get(FIELD_RESET_TIME)).getTime());
-                rateLimit.setUpdatedAt((long) dbObject.get(FIELD_UPDATED_AT));
-                rateLimit.setCreatedAt((long) dbObject.get(FIELD_CREATED_AT));
-                rateLimit.setAsync((boolean) dbObject.get(FIELD_ASYNC));
-                return rateLimit;
+                return cursor.next();
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
             }
         };
     }
+
+    /**
+     * Atomically increments the counter of a rate-limit and returns its state after the update, in a single
+     * round trip.
+     *
+     * If no document exists for the key (or if the current window is over), a new one is created with the given
+     * <code>resetTime</code>. Unlike a {@link #get(String)} / {@link #save(RateLimit)} sequence, concurrent
+     * increments from several gateways are never lost.
+     *
+     * @param rateLimitKey The rate-limit key.
+     * @param weight The value to add to the counter.
+     * @param resetTime The reset time to use if a new window has to be started.
+     * @param async Is the rate-limit synchronized asynchronously.
+     * @return The rate-limit as stored after the increment.
+     * @throws IllegalStateException If the increment kept losing races against concurrent window creations.
+     */
+    public RateLimit incrementAndGet(String rateLimitKey, long weight, long resetTime, boolean async) {
+        if (circuitBreaker != null) {
+            // A call given up after its timeout may still reach the database: whichever of the call and the fallback
+            // settles first counts the increment, the other one takes it into account
+            final AtomicBoolean settled = new AtomicBoolean();
+            return circuitBreaker.execute(() -> {
+                RateLimit rateLimit = doIncrementAndGet(rateLimitKey, weight, resetTime, async);
+                if (settled.compareAndSet(false, true)) {
+                    return localTable.seed(rateLimit);
+                }
+                // Counted locally by the fallback in the meantime, but held by the database now
+                localTable.discount(rateLimit, weight);
+                return rateLimit;
+            }, () -> settled.compareAndSet(false, true) ?
+                    cache(localTable.incrementAndGet(rateLimitKey, weight, resetTime, async)) :
+                    cache(localTable.get(rateLimitKey)));
+        }
+
+        return doIncrementAndGet(rateLimitKey, weight, resetTime, async);
+    }
+
+    private RateLimit doIncrementAndGet(String rateLimitKey, long weight, long resetTime, boolean async) {
+        try {
+            writePending(rateLimitKey);
+
+            for (int attempt = 1; attempt <= MAX_INCREMENT_ATTEMPTS; attempt++) {
+                RateLimit rateLimit = tryIncrement(rateLimitKey, weight, resetTime, async);
+                if (rateLimit != null) {
+                    if (legacyFallback && rateLimit.getCounter() == weight) {
+                        // A new window may just have been started in the compact layout
+                        rateLimit = foldLegacy(rateLimitKey, rateLimit);
+                    }
+
+                    return cache(rateLimit);
+                }
+
+                // Another gateway has started the new window in the meantime
+                LOGGER.debug("Increment of rate-limit [{}] lost a race, attempt {}", rateLimitKey, attempt);
+            }
+        } catch (RuntimeException re) {
+            // The increment may have been applied even though it failed
+            evict(rateLimitKey);
+            throw re;
+        }
+
+        // The window known locally, if any, is not the one of the database
+        evict(rateLimitKey);
+        throw new IllegalStateException(String.format(
+                "Unable to increment rate-limit [%s] after %d attempts", rateLimitKey, MAX_INCREMENT_ATTEMPTS));
+    }
+
+    /**
+     * Increments the current window of a rate-limit, or starts a new one.
+     *
+     * @return The rate-limit after the update, or <code>null</code> if a concurrent update prevented it and the
+     * increment has to be tried again.
+     */
+    private RateLimit tryIncrement(String rateLimitKey, long weight, long resetTime, boolean async) {
+        final long now = System.currentTimeMillis();
+
+        Bson query = schema.byKey(rateLimitKey)
+                .append(schema.resetTime, new BsonDocument("$gt", new BsonDateTime(now)));
+
+        BsonDocument setOnInsert = new BsonDocument(schema.createdAt, new BsonInt64(now))
+                .append(schema.resetTime, new BsonDateTime(resetTime));
+        if (schema.compact) {
+            setOnInsert.append(RateLimitSchema.COMPACT_FIELD_KEY, new BsonString(rateLimitKey));
+        }
+
+        Bson update = new BsonDocument("$inc", new BsonDocument(schema.counter, new BsonInt64(weight)))
+                .append("$set", new BsonDocument(schema.lastRequest, new BsonInt64(now))
+                        .append(schema.updatedAt, new BsonInt64(now))
+                        .append(schema.async, BsonBoolean.valueOf(async)))
+                .append("$setOnInsert", setOnInsert);
+
+        try {
+            return rateLimitCollection.findOneAndUpdate(query, update, new FindOneAndUpdateOptions()
+                    .returnDocument(ReturnDocument.AFTER)
+                    .upsert(true));
+        } catch (MongoException me) {
+            if (ErrorCategory.fromErrorCode(me.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                throw me;
+            }
+        }
+
+        // The document exists but its window is over and it has not been removed yet by the TTL monitor:
+        // start a new window on it.
+        Bson expiredQuery = schema.byKey(rateLimitKey)
+                .append(schema.resetTime, new BsonDocument("$lte", new BsonDateTime(now)));
+
+        Bson reset = new BsonDocument("$set", new BsonDocument(schema.counter, new BsonInt64(weight))
+                .append(schema.lastRequest, new BsonInt64(now))
+                .append(schema.resetTime, new BsonDateTime(resetTime))
+                .append(schema.updatedAt, new BsonInt64(now))
+                .append(schema.createdAt, new BsonInt64(now))
+                .append(schema.async, BsonBoolean.valueOf(async)));
+
+        return rateLimitCollection.findOneAndUpdate(expiredQuery, reset, new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.AFTER));
+    }
+
+    /**
+     * Moves the counter of the legacy document of a rate-limit, if any, into its compact document, so that the calls
+     * already counted in the current window are not forgotten when switching to the compact layout.
+     *
+     * @return The compact rate-limit after the legacy counter has been added.
+     */
+    private RateLimit foldLegacy(String rateLimitKey, RateLimit rateLimit) {
+        // Deleting the legacy document ensures that its counter is only added once, even by concurrent gateways
+        RateLimit legacy = rateLimitCollection.findOneAndDelete(RateLimitSchema.LEGACY.byKey(rateLimitKey));
+        if (legacy == null) {
+            checkLegacyDrained();
+            return rateLimit;
+        }
+
+        if (legacy.getResetTime() <= System.currentTimeMillis()) {
+            return rateLimit;
+        }
+
+        LOGGER.debug("Fold legacy rate-limit [{}] into the compact layout", rateLimitKey);
+
+        // The window of the legacy document is the current one
+        Bson update = new BsonDocument("$inc", new BsonDocument(schema.counter, new BsonInt64(legacy.getCounter())))
+                .append("$set", new BsonDocument(schema.resetTime, new BsonDateTime(legacy.getResetTime()))
+                        .append(schema.createdAt, new BsonInt64(legacy.getCreatedAt())));
+
+        RateLimit folded = rateLimitCollection.findOneAndUpdate(schema.byKey(rateLimitKey), update,
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+
+        return (folded != null) ? folded : rateLimit;
+    }
+
+    /**
+     * Turns the legacy fallback off once no legacy document is left, checking at most once per
+     * <code>legacyCheckInterval</code>.
+     */
+    private void checkLegacyDrained() {
+        final long now = System.currentTimeMillis();
+        if (now - legacyCheckedAt < legacyCheckInterval) {
+            return;
+        }
+        legacyCheckedAt = now;
+
+        if (rateLimitCollection.find(Filters.exists(RateLimitSchema.LEGACY.counter))
+                .projection(Projections.include(RateLimitSchema.FIELD_ID)).first() == null) {
+            LOGGER.info("No legacy rate-limit left, the legacy fallback is turned off");
+            legacyFallback = false;
+        }
+    }
+
+    /**
+     * Consumes one call from the quota of a rate-limit.
+     *
+     * When leasing is enabled, the call is taken from a chunk of quota reserved locally by this node, and the
+     * shared rate-limit is only updated when a new chunk has to be reserved. Otherwise, the shared rate-limit is
+     * incremented for each call.
+     *
+     * @param rateLimitKey The rate-limit key.
+     * @param limit The maximum number of calls allowed in a window.
+     * @param resetTime The reset time to use if a new window has to be started.
+     * @return <code>true</code> if the call is allowed.
+     */
+    public boolean tryAcquire(String rateLimitKey, long limit, long resetTime) {
+        if (leaseManager != null) {
+            return leaseManager.tryAcquire(rateLimitKey, limit, resetTime);
+        }
+
+        return incrementAndGet(rateLimitKey, 1, resetTime, false).getCounter() <= limit;
+    }
+
+    /**
+     * Atomically adds <code>amount</code> to the counter of the current window of a rate-limit, provided that its
+     * counter is not greater than <code>maxCounter</code>.
+     *
+     * @return The rate-limit after the update, or <code>null</code> if there is no current window or if the
+     * condition on the counter is not met.
+     */
+    RateLimit reserve(String rateLimitKey, long amount, long maxCounter) {
+        final long now = System.currentTimeMillis();
+
+        Bson query = schema.byKey(rateLimitKey)
+                .append(schema.resetTime, new BsonDocument("$gt", new BsonDateTime(now)))
+                .append(schema.counter, new BsonDocument("$lte", new BsonInt64(maxCounter)));
+
+        Bson update = new BsonDocument("$inc", new BsonDocument(schema.counter, new BsonInt64(amount)))
+                .append("$set", new BsonDocument(schema.lastRequest, new BsonInt64(now))
+                        .append(schema.updatedAt, new BsonInt64(now)));
+
+        RateLimit rateLimit;
+        try {
+            writePending(rateLimitKey);
+            rateLimit = rateLimitCollection.findOneAndUpdate(query, update, new FindOneAndUpdateOptions()
+                    .returnDocument(ReturnDocument.AFTER));
+        } catch (RuntimeException re) {
+            evict(rateLimitKey);
+            throw re;
+        }
+
+        if (rateLimit == null) {
+            // The window or the counter known locally, if any, is not the one of the database
+            evict(rateLimitKey);
+            return null;
+        }
+
+        return cache(rateLimit);
+    }
+
+    /**
+     * Reads a rate-limit from the database, bypassing any local state.
+     *
+     * @return The rate-limit, or <code>null</code> if there is none for this key.
+     */
+    RateLimit load(String rateLimitKey) {
+        RateLimit rateLimit = rateLimitCollection.find(schema.byKey(rateLimitKey)).first();
+
+        if (rateLimit == null && legacyFallback) {
+            rateLimit = rateLimitCollection.find(RateLimitSchema.LEGACY.byKey(rateLimitKey)).first();
+        }
+
+        return rateLimit;
+    }
+
+    private RateLimit loadOrCreate(String rateLimitKey) {
+        RateLimit rateLimit = load(rateLimitKey);
+        return (rateLimit == null) ? new RateLimit(rateLimitKey) : rateLimit;
+    }
+
+    /**
+     * Adds the calls counted locally while the database was unavailable to the shared rate-limits.
+     */
+    private void reconcile() {
+        LOGGER.info("Reconciling {} local rate-limits", localTable.size());
+
+        localTable.drain(delta -> {
+            try {
+                doIncrementAndGet(delta.getKey(), delta.getCounter(), delta.getResetTime(), delta.isAsync());
+            } catch (Exception ex) {
+                LOGGER.error("Unable to reconcile rate-limit [{}]", delta.getKey(), ex);
+            }
+        });
+    }
+
+    /**
+     * Returns the circuit-breaker, or <code>null</code> if failover is not enabled.
+     */
+    public RateLimitCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the lease manager, or <code>null</code> if leasing is not enabled.
+     */
+    public RateLimitLeaseManager getLeaseManager() {
+        return leaseManager;
+    }
+
+    /**
+     * Returns the write-behind buffer, or <code>null</code> if write-behind is not enabled.
+     */
+    public RateLimitWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Returns the near-cache, or <code>null</code> if the near-cache is not enabled.
+     */
+    public RateLimitNearCache getNearCache() {
+        return nearCache;
+    }
+
+    private RateLimit cache(RateLimit rateLimit) {
+        if (nearCache != null) {
+            nearCache.put(rateLimit);
+        }
+
+        return rateLimit;
+    }
+
+    private void evict(String rateLimitKey) {
+        if (nearCache != null) {
+            nearCache.evict(rateLimitKey);
+        }
+    }
+
+    /**
+     * Writes the buffered state of a rate-limit, if any, before it is updated in place in the database. Removing it
+     * waits for a flush of this key in progress, which would otherwise overwrite the update.
+     */
+    private void writePending(String rateLimitKey) {
+        if (writeBehind != null) {
+            RateLimit pending = writeBehind.remove(rateLimitKey);
+            if (pending != null) {
+                rateLimitCollection.replaceOne(schema.byKey(rateLimitKey), pending, UPSERT);
+            }
+        }
+    }
+
+    private void write(Collection<RateLimit> rateLimits) {
+        List<ReplaceOneModel<RateLimit>> requests = new ArrayList<>(rateLimits.size());
+
+        for (RateLimit rateLimit : rateLimits) {
+            requests.add(new ReplaceOneModel<>(schema.byKey(rateLimit.getKey()), rateLimit, UPSERT));
+        }
+
+        rateLimitCollection.bulkWrite(requests, UNORDERED);
+    }
 }
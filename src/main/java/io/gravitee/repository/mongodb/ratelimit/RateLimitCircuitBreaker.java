@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Circuit-breaker protecting the gateway from a slow or unavailable rate-limit database.
+ *
+ * The outcome and the latency of the last <code>windowSize</code> calls are tracked. The breaker opens when, over
+ * this window, the error rate or the 99th percentile of the latency goes above its threshold. While open, calls are
+ * not sent to the database and the fallback is used instead. After <code>openDuration</code>, a single call is let
+ * through: if it succeeds, the breaker closes and the listener is notified so that local state can be reconciled.
+ *
+ * If a <code>callTimeout</code> is set, calls are run on a dedicated pool and are considered as failed when they
+ * take longer, so that the caller is never blocked for more than this timeout.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitCircuitBreaker {
+
+    private final Logger logger = LoggerFactory.getLogger(RateLimitCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minCalls;
+    private final int errorRateThreshold;
+    private final long latencyThreshold;
+    private final long openDuration;
+    private final long callTimeout;
+    private final Runnable onClose;
+
+    private final long[] latencies;
+    private final boolean[] failures;
+    private int position;
+    private int calls;
+
+    private final AtomicInteger evaluation = new AtomicInteger();
+    private final LongAdder trips = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile long lastLatencyPercentile;
+    private volatile int lastErrorRate;
+
+    private ExecutorService executor;
+
+    RateLimitCircuitBreaker(int windowSize, int minCalls, int errorRateThreshold, long latencyThreshold,
+                            long openDuration, long callTimeout, int threads, Runnable onClose) {
+        this.windowSize = windowSize;
+        this.minCalls = minCalls;
+        this.errorRateThreshold = errorRateThreshold;
+        this.latencyThreshold = latencyThreshold;
+        this.openDuration = openDuration;
+        this.callTimeout = callTimeout;
+        this.onClose = onClose;
+        this.latencies = new long[windowSize];
+        this.failures = new boolean[windowSize];
+
+        if (callTimeout > 0) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * 4), runnable -> {
+                        Thread thread = new Thread(runnable, "gio.ratelimit-call-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    <T> T execute(Supplier<T> call, Supplier<T> fallback) {
+        if (! allowCall()) {
+            fallbacks.increment();
+            return fallback.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = invoke(call);
+            onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        } catch (Exception ex) {
+            logger.debug("Rate-limit call failed, using local state", ex);
+            onFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            fallbacks.increment();
+            return fallback.get();
+        }
+    }
+
+    void execute(Runnable call, Runnable fallback) {
+        execute(() -> {
+            call.run();
+            return null;
+        }, () -> {
+            fallback.run();
+            return null;
+        });
+    }
+
+    private <T> T invoke(Supplier<T> call) throws Exception {
+        if (executor == null) {
+            return call.get();
+        }
+
+        Future<T> future = executor.submit(call::get);
+        try {
+            return future.get(callTimeout, TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            // Interrupting a driver thread would close its pooled connection
+            future.cancel(false);
+            throw ex;
+        }
+    }
+
+    private boolean allowCall() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+            synchronized (this) {
+                if (state == State.OPEN) {
+                    // Let a single probe call go through
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void onSuccess(long latency) {
+        if (state == State.HALF_OPEN) {
+            synchronized (this) {
+                reset();
+                state = State.CLOSED;
+            }
+            logger.info("Rate-limit database is available again, closing the circuit");
+            onClose.run();
+            return;
+        }
+
+        record(latency, false);
+    }
+
+    private void onFailure(long latency) {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+
+        record(latency, true);
+    }
+
+    private void record(long latency, boolean failure) {
+        synchronized (this) {
+            latencies[position] = latency;
+            failures[position] = failure;
+            position = (position + 1) % windowSize;
+            calls = Math.min(calls + 1, windowSize);
+        }
+
+        // Evaluating the percentile has a cost: only do it on failures or every tenth of the window
+        if (failure || evaluation.incrementAndGet() % Math.max(1, windowSize / 10) == 0) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        long[] sample;
+        int errors = 0;
+
+        synchronized (this) {
+            if (state != State.CLOSED || calls < minCalls) {
+                return;
+            }
+
+            sample = Arrays.copyOf(latencies, calls);
+            for (int i = 0; i < calls; i++) {
+                if (failures[i]) {
+                    errors++;
+                }
+            }
+        }
+
+        Arrays.sort(sample);
+        lastLatencyPercentile = sample[(int) Math.ceil(sample.length * 0.99) - 1];
+        lastErrorRate = errors * 100 / sample.length;
+
+        if (lastErrorRate >= errorRateThreshold || lastLatencyPercentile >= latencyThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        synchronized (this) {
+            if (state == State.OPEN) {
+                return;
+            }
+
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            reset();
+        }
+
+        trips.increment();
+        logger.warn("Rate-limit database is unavailable or slow (error rate: {}%, p99: {} ms), opening the circuit",
+                lastErrorRate, lastLatencyPercentile);
+    }
+
+    private void reset() {
+        position = 0;
+        calls = 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTripCount() {
+        return trips.sum();
+    }
+
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    public int getErrorRate() {
+        return lastErrorRate;
+    }
+
+    public long getLatencyPercentile() {
+        return lastLatencyPercentile;
+    }
+}
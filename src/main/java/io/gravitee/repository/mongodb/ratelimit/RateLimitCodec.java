@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import static io.gravitee.repository.mongodb.ratelimit.RateLimitSchema.*;
+
+/**
+ * Encodes and decodes {@link RateLimit} straight from / to BSON, without any intermediate document.
+ *
+ * Documents are written using the configured {@link RateLimitSchema}, but both the legacy and the compact layouts
+ * are understood when reading.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitCodec implements Codec<RateLimit> {
+
+    private final RateLimitSchema schema;
+
+    public RateLimitCodec(RateLimitSchema schema) {
+        this.schema = schema;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, RateLimit rateLimit, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (schema.compact) {
+            writer.writeBinaryData(FIELD_ID, schema.id(rateLimit.getKey()).asBinary());
+            writer.writeString(COMPACT_FIELD_KEY, rateLimit.getKey());
+        } else {
+            writer.writeString(FIELD_ID, rateLimit.getKey());
+        }
+        writer.writeInt64(schema.counter, rateLimit.getCounter());
+        writer.writeInt64(schema.lastRequest, rateLimit.getLastRequest());
+        writer.writeDateTime(schema.resetTime, rateLimit.getResetTime());
+        writer.writeInt64(schema.updatedAt, rateLimit.getUpdatedAt());
+        writer.writeInt64(schema.createdAt, rateLimit.getCreatedAt());
+        writer.writeBoolean(schema.async, rateLimit.isAsync());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public RateLimit decode(BsonReader reader, DecoderContext decoderContext) {
+        String key = null;
+        long counter = 0, lastRequest = 0, resetTime = 0, updatedAt = 0, createdAt = 0;
+        boolean async = false;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case FIELD_ID:
+                    // In the compact layout, the id is a hash of the key
+                    if (reader.getCurrentBsonType() == BsonType.STRING) {
+                        key = reader.readString();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case COMPACT_FIELD_KEY:
+                    key = reader.readString();
+                    break;
+                case FIELD_COUNTER:
+                case COMPACT_FIELD_COUNTER:
+                    counter = readLong(reader);
+                    break;
+                case FIELD_LAST_REQUEST:
+                case COMPACT_FIELD_LAST_REQUEST:
+                    lastRequest = readLong(reader);
+                    break;
+                case FIELD_RESET_TIME:
+                case COMPACT_FIELD_RESET_TIME:
+                    resetTime = readLong(reader);
+                    break;
+                case FIELD_UPDATED_AT:
+                case COMPACT_FIELD_UPDATED_AT:
+                    updatedAt = readLong(reader);
+                    break;
+                case FIELD_CREATED_AT:
+                case COMPACT_FIELD_CREATED_AT:
+                    createdAt = readLong(reader);
+                    break;
+                case FIELD_ASYNC:
+                case COMPACT_FIELD_ASYNC:
+                    async = reader.readBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        RateLimit rateLimit = new RateLimit(key);
+        rateLimit.setCounter(counter);
+        rateLimit.setLastRequest(lastRequest);
+        rateLimit.setResetTime(resetTime);
+        rateLimit.setUpdatedAt(updatedAt);
+        rateLimit.setCreatedAt(createdAt);
+        rateLimit.setAsync(async);
+        return rateLimit;
+    }
+
+    @Override
+    public Class<RateLimit> getEncoderClass() {
+        return RateLimit.class;
+    }
+
+    private static long readLong(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case DATE_TIME:
+                return reader.readDateTime();
+            case INT32:
+                return reader.readInt32();
+            case DOUBLE:
+                return (long) reader.readDouble();
+            default:
+                return reader.readInt64();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Quota leasing for rate-limits.
+ *
+ * Instead of updating the shared rate-limit document on each call, a gateway reserves a chunk of the remaining
+ * quota with a single atomic update and consumes it locally. The shared document is only updated again when the
+ * chunk is used up or when the window is over. The size of the next chunk follows the observed request rate of the
+ * key, so that a chunk lasts about <code>targetDuration</code> milliseconds: it grows when a chunk is used up early and
+ * shrinks when a chunk is still partly unused at the end of its window.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitLeaseManager {
+
+    private final Logger logger = LoggerFactory.getLogger(RateLimitLeaseManager.class);
+
+    private static final int MAX_RESERVE_ATTEMPTS = 3;
+    private static final int PURGE_PERIOD = 1024;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final MongoRateLimitRepository repository;
+    private final long initialChunk;
+    private final long minChunk;
+    private final long maxChunk;
+    private final long targetDuration;
+
+    private final LongAdder renewals = new LongAdder();
+    private final AtomicLong calls = new AtomicLong();
+
+    RateLimitLeaseManager(MongoRateLimitRepository repository, long initialChunk, long minChunk, long maxChunk,
+                          long targetDuration) {
+        this.repository = repository;
+        this.initialChunk = initialChunk;
+        this.minChunk = minChunk;
+        this.maxChunk = maxChunk;
+        this.targetDuration = targetDuration;
+    }
+
+    boolean tryAcquire(String rateLimitKey, long limit, long resetTime) {
+        if (calls.incrementAndGet() % PURGE_PERIOD == 0) {
+            purge();
+        }
+
+        Lease lease = leases.computeIfAbsent(rateLimitKey, key -> new Lease(initialChunk));
+
+        while (true) {
+            if (lease.isActive() && lease.tryConsume()) {
+                return true;
+            }
+
+            synchronized (lease) {
+                if (lease.isActive()) {
+                    if (lease.remaining.get() > 0) {
+                        // Renewed by another thread in the meantime
+                        continue;
+                    }
+
+                    if (lease.exhausted) {
+                        return false;
+                    }
+                }
+
+                renew(rateLimitKey, lease, limit, resetTime);
+
+                if (lease.remaining.get() == 0) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void renew(String rateLimitKey, Lease lease, long limit, long resetTime) {
+        renewals.increment();
+
+        final long now = System.currentTimeMillis();
+        long chunk = Math.min(lease.nextChunk(now), limit);
+
+        // Fast path: there is enough quota left for a full chunk
+        RateLimit rateLimit = repository.reserve(rateLimitKey, chunk, limit - chunk);
+        if (rateLimit != null) {
+            lease.grant(chunk, rateLimit.getResetTime(), now);
+            return;
+        }
+
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            RateLimit current = repository.load(rateLimitKey);
+
+            if (current == null || current.getResetTime() <= now) {
+                // No window in progress, start a new one
+                rateLimit = repository.incrementAndGet(rateLimitKey, chunk, resetTime, false);
+                long overflow = Math.max(0, rateLimit.getCounter() - limit);
+                lease.grant(Math.max(0, chunk - overflow), rateLimit.getResetTime(), now);
+                return;
+            }
+
+            long amount = Math.min(chunk, limit - current.getCounter());
+            if (amount <= 0) {
+                lease.grant(0, current.getResetTime(), now);
+                return;
+            }
+
+            rateLimit = repository.reserve(rateLimitKey, amount, limit - amount);
+            if (rateLimit != null) {
+                lease.grant(amount, rateLimit.getResetTime(), now);
+                return;
+            }
+        }
+
+        // Too much contention on this key: deny this call and let the next one try again
+        logger.debug("Unable to reserve quota for rate-limit [{}]", rateLimitKey);
+        lease.grant(0, now, now);
+    }
+
+    private void purge() {
+        final long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.resetTime <= now);
+    }
+
+    public int getLeaseCount() {
+        return leases.size();
+    }
+
+    public long getRenewalCount() {
+        return renewals.sum();
+    }
+
+    private class Lease {
+
+        private final AtomicLong remaining = new AtomicLong();
+
+        private volatile long resetTime;
+        private volatile boolean exhausted;
+
+        private long chunk;
+        private long granted;
+        private long grantedAt;
+
+        private Lease(long chunk) {
+            this.chunk = chunk;
+        }
+
+        private boolean isActive() {
+            return resetTime > System.currentTimeMillis();
+        }
+
+        private boolean tryConsume() {
+            long value;
+            do {
+                value = remaining.get();
+                if (value <= 0) {
+                    return false;
+                }
+            } while (! remaining.compareAndSet(value, value - 1));
+
+            return true;
+        }
+
+        private long nextChunk(long now) {
+            if (granted <= 0) {
+                return chunk;
+            }
+
+            if (isActive()) {
+                // The previous chunk has been fully used within the current window
+                if (remaining.get() == 0) {
+                    chunk = observed(granted, now - grantedAt);
+                }
+            } else if (remaining.get() > 0) {
+                // The window ended before the previous chunk was used up, the quota left in it being wasted
+                chunk = Math.min(chunk, observed(granted - remaining.get(), resetTime - grantedAt));
+            }
+
+            return chunk;
+        }
+
+        /**
+         * @return The chunk lasting about <code>targetDuration</code> at the rate of the given calls.
+         */
+        private long observed(long used, long elapsed) {
+            return Math.max(minChunk, Math.min(maxChunk, used * targetDuration / Math.max(1, elapsed)));
+        }
+
+        private void grant(long amount, long resetTime, long now) {
+            this.granted = amount;
+            this.grantedAt = now;
+            this.exhausted = (amount == 0);
+            this.resetTime = resetTime;
+            this.remaining.set(amount);
+        }
+    }
+}
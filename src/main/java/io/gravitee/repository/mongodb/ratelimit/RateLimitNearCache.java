@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, in-process cache of rate-limits.
+ *
+ * Entries are evicted in LRU order and are never served after the <code>reset_time</code> of the rate-limit (or
+ * after the configured time-to-live, if shorter). To limit contention, the cache is split into segments, each of
+ * them being an access-ordered {@link LinkedHashMap}.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitNearCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long timeToLive;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    RateLimitNearCache(int maxSize, long timeToLive) {
+        this.timeToLive = timeToLive;
+
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    RateLimit get(String rateLimitKey) {
+        Entry entry = segment(rateLimitKey).get(rateLimitKey);
+
+        if (entry == null || entry.expireAt <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return new RateLimit(entry.rateLimit);
+    }
+
+    void put(RateLimit rateLimit) {
+        long now = System.currentTimeMillis();
+        long expireAt = (timeToLive > 0) ? Math.min(rateLimit.getResetTime(), now + timeToLive) : rateLimit.getResetTime();
+
+        if (expireAt <= now) {
+            // The window is already over, there is no point to keep it
+            evict(rateLimit.getKey());
+        } else {
+            segment(rateLimit.getKey()).put(rateLimit.getKey(), new Entry(new RateLimit(rateLimit), expireAt));
+        }
+    }
+
+    void evict(String rateLimitKey) {
+        segment(rateLimitKey).remove(rateLimitKey);
+    }
+
+    private Segment segment(String rateLimitKey) {
+        int hash = rateLimitKey.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static class Entry {
+
+        private final RateLimit rateLimit;
+        private final long expireAt;
+
+        private Entry(RateLimit rateLimit, long expireAt) {
+            this.rateLimit = rateLimit;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Segment {
+
+        private final Map<String, Entry> entries;
+
+        private Segment(int maxSize) {
+            this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private synchronized Entry get(String key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(String key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        private synchronized void remove(String key) {
+            entries.remove(key);
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
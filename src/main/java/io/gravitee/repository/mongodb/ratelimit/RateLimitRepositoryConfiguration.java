@@ -16,17 +16,26 @@
 package io.gravitee.repository.mongodb.ratelimit;
 
 import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.client.MongoCollection;
 import io.gravitee.repository.Scope;
+import io.gravitee.repository.mongodb.common.AsyncMongoFactory;
 import io.gravitee.repository.mongodb.common.MongoFactory;
 import io.gravitee.repository.ratelimit.api.RateLimitRepository;
+import io.gravitee.repository.ratelimit.model.RateLimit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
 /**
  * @author David BRASSELY (david.brassely at graviteesource.com)
  * @author GraviteeSource Team
@@ -34,29 +43,82 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 @Configuration
 public class RateLimitRepositoryConfiguration {
 
-	@Autowired
-	private Environment environment;
+	/**
+	 * Options of the rate-limit repository which the asynchronous driver does not implement.
+	 */
+	private static final String[] SYNC_ONLY_FEATURES = { "writeBehind", "cache", "lease", "failover" };
 
 	@Autowired
-	@Qualifier("rateLimitMongo")
-	private Mongo mongo;
+	private Environment environment;
 
 	protected String getDatabaseName() {
 		return environment.getProperty("ratelimit.mongodb.dbname", "gravitee");
 	}
 
+	/*
+	 * The clients of both drivers are lazy: only the one of the selected driver is created, when the repository
+	 * requests its collection.
+	 */
 	@Bean(name = "rateLimitMongo")
+	@Lazy
 	public static MongoFactory mongoFactory() {
 		return new MongoFactory(Scope.RATE_LIMIT.getName());
 	}
 
 	@Bean(name = "rateLimitMongoTemplate")
-	public MongoOperations mongoOperations() {
+	@Lazy
+	public MongoOperations mongoOperations(@Qualifier("rateLimitMongo") Mongo mongo) {
 		return new MongoTemplate(mongo, getDatabaseName());
 	}
 
+	@Bean
+	public RateLimitSchema rateLimitSchema() {
+		return RateLimitSchema.of(environment.getProperty("ratelimit.mongodb.schema.type", "legacy"));
+	}
+
+	@Bean(name = "rateLimitCollection")
+	@Lazy
+	public MongoCollection<RateLimit> rateLimitCollection(@Qualifier("rateLimitMongo") Mongo mongo) {
+		return ((MongoClient) mongo)
+				.getDatabase(getDatabaseName())
+				.getCollection(MongoRateLimitRepository.RATE_LIMIT_COLLECTION, RateLimit.class)
+				.withCodecRegistry(fromRegistries(
+						fromCodecs(new RateLimitCodec(rateLimitSchema())),
+						MongoClient.getDefaultCodecRegistry()));
+	}
+
+	@Bean(name = "rateLimitAsyncMongo")
+	@Lazy
+	public static AsyncMongoFactory asyncMongoFactory() {
+		return new AsyncMongoFactory(Scope.RATE_LIMIT.getName());
+	}
+
+	@Bean(name = "rateLimitAsyncCollection")
+	@Lazy
+	public com.mongodb.async.client.MongoCollection<RateLimit> rateLimitAsyncCollection(
+			@Qualifier("rateLimitAsyncMongo") com.mongodb.async.client.MongoClient asyncMongo) {
+		return asyncMongo
+				.getDatabase(getDatabaseName())
+				.getCollection(MongoRateLimitRepository.RATE_LIMIT_COLLECTION, RateLimit.class)
+				.withCodecRegistry(fromRegistries(
+						fromCodecs(new RateLimitCodec(rateLimitSchema())),
+						MongoClients.getDefaultCodecRegistry()));
+	}
+
 	@Bean
 	public RateLimitRepository rateLimitRepository() {
+		// The asynchronous driver does not hold a thread for each request in flight
+		if ("async".equalsIgnoreCase(environment.getProperty("ratelimit.mongodb.driver", "sync"))) {
+			for (String feature : SYNC_ONLY_FEATURES) {
+				if (environment.getProperty("ratelimit.mongodb." + feature + ".enabled", Boolean.class, false)) {
+					throw new IllegalStateException("ratelimit.mongodb." + feature
+							+ " is only available with the sync driver, disable it or set ratelimit.mongodb.driver to sync");
+				}
+			}
+
+			return new AsyncMongoRateLimitRepository();
+		}
+
 		return new MongoRateLimitRepository();
 	}
 }
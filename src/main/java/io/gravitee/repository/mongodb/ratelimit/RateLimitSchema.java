@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.client.model.Filters;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Layout of the documents of the <code>ratelimit</code> collection.
+ *
+ * The legacy layout uses the rate-limit key as <code>_id</code> and long field names. The compact layout uses a
+ * 128-bit hash of the key as <code>_id</code>, keeps the key in an unindexed field and uses single-character field
+ * names. <code>reset_time</code> is stored as a BSON date in both layouts, since the TTL index relies on it.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RateLimitSchema {
+
+    static final String FIELD_ID = "_id";
+
+    static final String FIELD_COUNTER = "counter";
+    static final String FIELD_RESET_TIME = "reset_time";
+    static final String FIELD_LAST_REQUEST = "last_request";
+    static final String FIELD_UPDATED_AT = "updated_at";
+    static final String FIELD_CREATED_AT = "created_at";
+    static final String FIELD_ASYNC = "async";
+
+    static final String COMPACT_FIELD_KEY = "k";
+    static final String COMPACT_FIELD_COUNTER = "c";
+    static final String COMPACT_FIELD_RESET_TIME = "r";
+    static final String COMPACT_FIELD_LAST_REQUEST = "l";
+    static final String COMPACT_FIELD_UPDATED_AT = "u";
+    static final String COMPACT_FIELD_CREATED_AT = "t";
+    static final String COMPACT_FIELD_ASYNC = "a";
+
+    public static final RateLimitSchema LEGACY = new RateLimitSchema(false,
+            FIELD_COUNTER, FIELD_RESET_TIME, FIELD_LAST_REQUEST, FIELD_UPDATED_AT, FIELD_CREATED_AT, FIELD_ASYNC);
+
+    public static final RateLimitSchema COMPACT = new RateLimitSchema(true,
+            COMPACT_FIELD_COUNTER, COMPACT_FIELD_RESET_TIME, COMPACT_FIELD_LAST_REQUEST, COMPACT_FIELD_UPDATED_AT,
+            COMPACT_FIELD_CREATED_AT, COMPACT_FIELD_ASYNC);
+
+    private static final BsonInt32 ONE = new BsonInt32(1);
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    });
+
+    final boolean compact;
+    final String counter;
+    final String resetTime;
+    final String lastRequest;
+    final String updatedAt;
+    final String createdAt;
+    final String async;
+
+    private RateLimitSchema(boolean compact, String counter, String resetTime, String lastRequest, String updatedAt,
+                            String createdAt, String async) {
+        this.compact = compact;
+        this.counter = counter;
+        this.resetTime = resetTime;
+        this.lastRequest = lastRequest;
+        this.updatedAt = updatedAt;
+        this.createdAt = createdAt;
+        this.async = async;
+    }
+
+    public static RateLimitSchema of(String name) {
+        return "compact".equalsIgnoreCase(name) ? COMPACT : LEGACY;
+    }
+
+    /**
+     * Returns the <code>_id</code> of the document holding the given rate-limit key.
+     */
+    BsonValue id(String rateLimitKey) {
+        if (! compact) {
+            return new BsonString(rateLimitKey);
+        }
+
+        return new BsonBinary(MD5.get().digest(rateLimitKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the query of the document holding the given rate-limit key.
+     */
+    BsonDocument byKey(String rateLimitKey) {
+        return new BsonDocument(FIELD_ID, id(rateLimitKey));
+    }
+
+    /**
+     * Returns the query of the asynchronous rate-limits updated since the given timestamp. Legacy documents are
+     * also matched when <code>legacyFallback</code> is set.
+     */
+    Bson asyncAfter(long timestamp, boolean legacyFallback) {
+        Bson query = asyncAfter(this, timestamp);
+        if (legacyFallback) {
+            query = Filters.or(query, asyncAfter(LEGACY, timestamp));
+        }
+
+        return query;
+    }
+
+    /**
+     * Returns the projection of the fields read when synchronizing asynchronous rate-limits, including the ones of
+     * the legacy layout when <code>legacyFallback</code> is set.
+     */
+    Bson asyncProjection(boolean legacyFallback) {
+        BsonDocument projection = new BsonDocument(counter, ONE)
+                .append(lastRequest, ONE)
+                .append(resetTime, ONE)
+                .append(updatedAt, ONE)
+                .append(createdAt, ONE)
+                .append(async, ONE);
+
+        if (compact) {
+            projection.append(COMPACT_FIELD_KEY, ONE);
+        }
+
+        if (legacyFallback) {
+            projection.append(LEGACY.counter, ONE)
+                    .append(LEGACY.lastRequest, ONE)
+                    .append(LEGACY.resetTime, ONE)
+                    .append(LEGACY.updatedAt, ONE)
+                    .append(LEGACY.createdAt, ONE)
+                    .append(LEGACY.async, ONE);
+        }
+
+        return projection;
+    }
+
+    private static Bson asyncAfter(RateLimitSchema schema, long timestamp) {
+        return new BsonDocument(schema.async, BsonBoolean.TRUE)
+                .append(schema.updatedAt, new BsonDocument("$gte", new BsonInt64(timestamp)));
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for rate-limits.
+ *
+ * Saves are kept in memory, coalesced by rate-limit key (only the latest state of a key is written) and flushed
+ * periodically by batches. Rate-limits being flushed remain visible until their write is acknowledged, so that a
+ * read racing a flush never falls back to an older state from the database.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitWriteBehind {
+
+    private final Logger logger = LoggerFactory.getLogger(RateLimitWriteBehind.class);
+
+    private final Map<String, RateLimit> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Rate-limits taken from <code>pending</code> by a flush, until their write returns.
+     */
+    private final Map<String, RateLimit> inFlight = new ConcurrentHashMap<>();
+
+    private final Consumer<List<RateLimit>> writer;
+    private final long flushInterval;
+    private final int maxBatchSize;
+    private final int maxBufferedKeys;
+
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    RateLimitWriteBehind(Consumer<List<RateLimit>> writer, long flushInterval, int maxBatchSize, int maxBufferedKeys) {
+        this.writer = writer;
+        this.flushInterval = flushInterval;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBufferedKeys = maxBufferedKeys;
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gio.ratelimit-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Write what is remaining before leaving
+        flush();
+    }
+
+    /**
+     * Buffers the given rate-limit.
+     *
+     * @return <code>false</code> if the buffer is full, in which case the caller has to write the rate-limit by
+     * itself.
+     */
+    boolean offer(RateLimit rateLimit) {
+        if (pending.size() >= maxBufferedKeys && ! pending.containsKey(rateLimit.getKey())) {
+            overflow.increment();
+            return false;
+        }
+
+        if (pending.put(rateLimit.getKey(), new RateLimit(rateLimit)) != null) {
+            merged.increment();
+        }
+
+        return true;
+    }
+
+    RateLimit get(String rateLimitKey) {
+        RateLimit rateLimit = pending.get(rateLimitKey);
+        if (rateLimit == null) {
+            rateLimit = inFlight.get(rateLimitKey);
+        }
+        return (rateLimit == null) ? null : new RateLimit(rateLimit);
+    }
+
+    /**
+     * Removes the buffered state of a rate-limit, once any write of this rate-limit in progress has returned, so
+     * that the caller can update the database without being overwritten by a flush.
+     *
+     * @return The latest buffered state which has not been written, or <code>null</code> if there is none.
+     */
+    RateLimit remove(String rateLimitKey) {
+        RateLimit removed = null;
+
+        while (true) {
+            awaitWritten(rateLimitKey);
+
+            // A failed write puts its rate-limit back in pending before leaving inFlight
+            RateLimit rateLimit = pending.remove(rateLimitKey);
+            if (rateLimit != null) {
+                removed = rateLimit;
+            }
+
+            if (! inFlight.containsKey(rateLimitKey)) {
+                return removed;
+            }
+        }
+    }
+
+    private void awaitWritten(String rateLimitKey) {
+        synchronized (inFlight) {
+            while (inFlight.containsKey(rateLimitKey)) {
+                try {
+                    inFlight.wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for rate-limit " + rateLimitKey, ie);
+                }
+            }
+        }
+    }
+
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int written = 0;
+
+        List<RateLimit> batch = new ArrayList<>(Math.min(maxBatchSize, pending.size()));
+        Iterator<String> keys = pending.keySet().iterator();
+
+        while (keys.hasNext()) {
+            String rateLimitKey = keys.next();
+            RateLimit rateLimit = pending.get(rateLimitKey);
+            if (rateLimit != null && ! inFlight.containsKey(rateLimitKey)) {
+                // Made visible in inFlight before leaving pending. If a newer state has been saved in the meantime,
+                // it stays in pending and is written by the next flush.
+                inFlight.put(rateLimitKey, rateLimit);
+                removeSame(pending, rateLimit);
+                batch.add(rateLimit);
+            }
+
+            if (batch.size() == maxBatchSize || (! keys.hasNext() && ! batch.isEmpty())) {
+                written += write(batch);
+                batch = new ArrayList<>(batch.size());
+            }
+        }
+
+        long latency = System.currentTimeMillis() - start;
+        lastFlushLatency.set(latency);
+        maxFlushLatency.accumulateAndGet(latency, Math::max);
+        flushes.increment();
+
+        logger.debug("Rate-limit write-behind flushed {} keys in {} ms (pending: {}, merged: {}, dropped: {}, overflow: {})",
+                written, latency, pending.size(), merged.sum(), dropped.sum(), overflow.sum());
+    }
+
+    private int write(List<RateLimit> batch) {
+        try {
+            return doWrite(batch);
+        } finally {
+            synchronized (inFlight) {
+                batch.forEach(rateLimit -> removeSame(inFlight, rateLimit));
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    private int doWrite(List<RateLimit> batch) {
+        try {
+            writer.accept(batch);
+            return batch.size();
+        } catch (MongoBulkWriteException bwe) {
+            logger.error("Unable to write {} of {} rate-limits", bwe.getWriteErrors().size(), batch.size(), bwe);
+            for (BulkWriteError error : bwe.getWriteErrors()) {
+                requeue(batch.get(error.getIndex()));
+            }
+            return batch.size() - bwe.getWriteErrors().size();
+        } catch (Exception ex) {
+            logger.error("Unable to write {} rate-limits", batch.size(), ex);
+            batch.forEach(this::requeue);
+            return 0;
+        }
+    }
+
+    /**
+     * Removes the given instance only. {@link Map#remove(Object, Object)} cannot be used, since rate-limits are equal
+     * as soon as they share the same key.
+     */
+    private static void removeSame(Map<String, RateLimit> rateLimits, RateLimit rateLimit) {
+        rateLimits.computeIfPresent(rateLimit.getKey(), (key, current) -> (current == rateLimit) ? null : current);
+    }
+
+    private void requeue(RateLimit rateLimit) {
+        // A newer state may have been saved since the flush started, in which case it supersedes this one
+        if (pending.size() >= maxBufferedKeys) {
+            dropped.increment();
+        } else if (pending.putIfAbsent(rateLimit.getKey(), rateLimit) != null) {
+            merged.increment();
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getMergedCount() {
+        return merged.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflow.sum();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getLastFlushLatency() {
+        return lastFlushLatency.get();
+    }
+
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.config;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.IFeatureAwareVersion;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.tests.MongodForTestsFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts an embedded MongoDB, shared by all the tests of the JVM, and points the management and rate-limit
+ * repositories to it. Tests may override any other property with <code>@TestPropertySource</code>.
+ *
+ * The server is a single-member replica set, so that the oplog is available to the tests which need it.
+ *
+ * @author GraviteeSource Team
+ */
+public class EmbeddedMongoInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    private static final String REPLICA_SET = "rs0";
+
+    private static String uri;
+
+    static synchronized String uri() {
+        if (uri == null) {
+            try {
+                MongodForTestsFactory factory = new MongodForTestsFactory(Version.Main.DEVELOPMENT) {
+                    @Override
+                    protected IMongodConfig newMongodConfig(IFeatureAwareVersion version) throws IOException {
+                        return new MongodConfigBuilder()
+                                .version(version)
+                                .replication(new Storage(null, REPLICA_SET, 16))
+                                .build();
+                    }
+                };
+                Runtime.getRuntime().addShutdownHook(new Thread(factory::shutdown));
+
+                MongoClient client = factory.newMongo();
+                ServerAddress address = client.getAddress();
+                initiateReplicaSet(client, address);
+                client.close();
+
+                uri = "mongodb://" + address.getHost() + ':' + address.getPort();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to start embedded MongoDB", ioe);
+            }
+        }
+
+        return uri;
+    }
+
+    private static void initiateReplicaSet(MongoClient client, ServerAddress address) {
+        client.getDB("admin").command(new BasicDBObject("replSetInitiate", new BasicDBObject("_id", REPLICA_SET)
+                .append("members", Collections.singletonList(
+                        new BasicDBObject("_id", 0).append("host", address.getHost() + ':' + address.getPort())))))
+                .throwOnError();
+
+        // The member has to be elected before it accepts writes
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!client.getDB("admin").command("isMaster").getBoolean("ismaster")) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Embedded MongoDB has not become primary");
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for embedded MongoDB", ie);
+            }
+        }
+    }
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("management.mongodb.uri", uri());
+        properties.put("ratelimit.mongodb.uri", uri());
+
+        context.getEnvironment().getPropertySources().addLast(new MapPropertySource("embeddedMongo", properties));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Builds model instances with every field set, for the mapping tests and the benchmarks.
+ *
+ * Fields holding documents (API and plan definitions, event payloads, page contents) are given a value of the
+ * requested size, other strings are short.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ModelSamples {
+
+    private static final Set<String> LARGE_FIELDS = new HashSet<>(Arrays.asList("definition", "payload", "content"));
+
+    private ModelSamples() {
+    }
+
+    public static <T> T sample(Class<T> type, int payloadSize) {
+        return sample(type, type.getSimpleName(), payloadSize);
+    }
+
+    public static <T> List<T> samples(Class<T> type, int count, int payloadSize) {
+        List<T> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(sample(type, type.getSimpleName() + '-' + i, payloadSize));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns a JSON-like text of the given size, as an API definition would be.
+     */
+    public static String payload(int size) {
+        StringBuilder payload = new StringBuilder(size);
+        payload.append('{');
+        for (int i = 0; payload.length() < size - 1; i++) {
+            payload.append("\"property").append(i).append("\":\"value").append(i).append("\",");
+        }
+        payload.setLength(size - 1);
+        return payload.append('}').toString();
+    }
+
+    private static <T> T sample(Class<T> type, String name, int payloadSize) {
+        try {
+            T instance = type.newInstance();
+
+            for (Class<?> clazz = type; clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+
+                    int size = LARGE_FIELDS.contains(field.getName()) ? payloadSize : 0;
+                    field.setAccessible(true);
+                    field.set(instance, value(field.getType(), field.getGenericType(), name + '.' + field.getName(), size));
+                }
+            }
+
+            return instance;
+        } catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException("Unable to build a sample of " + type, roe);
+        }
+    }
+
+    private static Object value(Class<?> type, Type genericType, String name, int size) {
+        if (type == String.class) {
+            return (size > 0) ? payload(size) : name;
+        } else if (type == Date.class) {
+            return new Date(1000L * Math.abs(name.hashCode()));
+        } else if (type == byte.class || type == Byte.class) {
+            return (byte) 4;
+        } else if (type == int.class || type == Integer.class) {
+            return Math.abs(name.hashCode() % 100);
+        } else if (type == long.class || type == Long.class) {
+            return (long) Math.abs(name.hashCode());
+        } else if (type == boolean.class || type == Boolean.class) {
+            return true;
+        } else if (type == int[].class) {
+            return new int[] {1, 2, 3, 4, 5, 6, 7, 8};
+        } else if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            return constants[constants.length - 1];
+        } else if (Set.class.isAssignableFrom(type)) {
+            Set<Object> set = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                set.add(value(typeArgument(genericType, 0), null, name + '[' + i + ']', 0));
+            }
+            return set;
+        } else if (Collection.class.isAssignableFrom(type)) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                list.add(value(typeArgument(genericType, 0), null, name + '[' + i + ']', 0));
+            }
+            return list;
+        } else if (Map.class.isAssignableFrom(type)) {
+            Map<Object, Object> map = new HashMap<>();
+            for (int i = 0; i < 3; i++) {
+                map.put(value(typeArgument(genericType, 0), null, "key" + i, 0),
+                        value(typeArgument(genericType, 1), null, name + ".value" + i, 0));
+            }
+            return map;
+        }
+
+        return sample(type, name, 0);
+    }
+
+    private static Class<?> typeArgument(Type genericType, int index) {
+        return (Class<?>) ((ParameterizedType) genericType).getActualTypeArguments()[index];
+    }
+}
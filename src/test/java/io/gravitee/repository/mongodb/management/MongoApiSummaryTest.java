@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.management.model.Api;
+import io.gravitee.repository.management.model.LifecycleState;
+import io.gravitee.repository.management.model.Visibility;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the summary reads of APIs against the embedded database: the same APIs as the full reads are returned, without
+ * their definition and picture.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoApiSummaryTest {
+
+    @Autowired
+    private MongoApiRepository apiRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoTemplate.dropCollection(ApiMongo.class);
+
+        create("api-1", Visibility.PUBLIC, "group-1");
+        create("api-2", Visibility.PRIVATE, "group-1");
+        create("api-3", Visibility.PUBLIC, "group-2");
+    }
+
+    @Test
+    public void shouldFindSummariesByVisibility() throws Exception {
+        Set<Api> summaries = apiRepository.findSummariesByVisibility(Visibility.PUBLIC);
+
+        assertEquals(ids(apiRepository.findByVisibility(Visibility.PUBLIC)), ids(summaries));
+        assertEquals(new HashSet<>(asList("api-1", "api-3")), ids(summaries));
+        summaries.forEach(this::assertSummary);
+    }
+
+    @Test
+    public void shouldFindSummariesByIds() throws Exception {
+        Set<Api> summaries = apiRepository.findSummariesByIds(asList("api-2", "api-3", "unknown"));
+
+        assertEquals(new HashSet<>(asList("api-2", "api-3")), ids(summaries));
+        summaries.forEach(this::assertSummary);
+    }
+
+    @Test
+    public void shouldFindSummariesByGroups() throws Exception {
+        Set<Api> summaries = apiRepository.findSummariesByGroups(Collections.singletonList("group-1"));
+
+        assertEquals(ids(apiRepository.findByGroups(Collections.singletonList("group-1"))), ids(summaries));
+        assertEquals(new HashSet<>(asList("api-1", "api-2")), ids(summaries));
+        summaries.forEach(this::assertSummary);
+    }
+
+    @Test
+    public void shouldKeepDefinitionOfFullReads() throws Exception {
+        Optional<Api> api = apiRepository.findById("api-1");
+
+        assertTrue(api.isPresent());
+        assertEquals("definition of api-1", api.get().getDefinition());
+    }
+
+    private void assertSummary(Api summary) {
+        assertEquals("name of " + summary.getId(), summary.getName());
+        assertEquals("1.0", summary.getVersion());
+        assertEquals(LifecycleState.STARTED, summary.getLifecycleState());
+        assertNull(summary.getDefinition());
+        assertNull(summary.getPicture());
+    }
+
+    private void create(String id, Visibility visibility, String group) throws Exception {
+        Api api = new Api();
+        api.setId(id);
+        api.setName("name of " + id);
+        api.setVersion("1.0");
+        api.setDefinition("definition of " + id);
+        api.setPicture("data:image/png;base64,cGljdHVyZQ==");
+        api.setVisibility(visibility);
+        api.setLifecycleState(LifecycleState.STARTED);
+        api.setGroups(Collections.singleton(group));
+        api.setCreatedAt(new Date());
+        api.setUpdatedAt(new Date());
+        apiRepository.create(api);
+    }
+
+    private static Set<String> ids(Set<Api> apis) {
+        return apis.stream().map(Api::getId).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.management.api.search.AuditCriteria;
+import io.gravitee.repository.management.model.Audit;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the keyset search of audits against the embedded database, through audits created at the same date, the
+ * <code>_id</code> of the last audit read breaking the tie.
+ *
+ * The audits are created around the turn of a month, across two partitions when they are enabled.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoAuditKeysetSearchTest {
+
+    private static final long TURN_OF_MONTH =
+            OffsetDateTime.of(2017, 2, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Autowired
+    private MongoAuditRepository auditRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoTemplate.getCollectionNames().stream()
+                .filter(name -> name.startsWith("audits"))
+                .forEach(name -> mongoTemplate.remove(new Query(), name));
+
+        create("audit-1", TURN_OF_MONTH - 1000, "APP_CREATED");
+        create("audit-2", TURN_OF_MONTH, "API_CREATED");
+        create("audit-3", TURN_OF_MONTH, "APP_CREATED");
+        create("audit-4", TURN_OF_MONTH, "API_CREATED");
+        create("audit-5", TURN_OF_MONTH + 1000, "APP_CREATED");
+    }
+
+    @Test
+    public void shouldReadAllAuditsOnce() {
+        assertEquals(asList("audit-5", "audit-4", "audit-3", "audit-2", "audit-1"), readAll(filter(), 10));
+    }
+
+    @Test
+    public void shouldResumeWithinAuditsCreatedAtSameDate() {
+        assertEquals(asList("audit-5", "audit-4", "audit-3", "audit-2", "audit-1"), readAll(filter(), 2));
+    }
+
+    @Test
+    public void shouldResumeAcrossMonths() {
+        assertEquals(asList("audit-5", "audit-4", "audit-3", "audit-2", "audit-1"), readAll(filter(), 3));
+    }
+
+    @Test
+    public void shouldResumeFromIdAtDate() {
+        List<Audit> audits = auditRepository.searchAfter(filter(), TURN_OF_MONTH, "audit-3", 10);
+
+        assertEquals(asList("audit-2", "audit-1"), ids(audits));
+    }
+
+    @Test
+    public void shouldIncludeAuditsAtDateWithoutId() {
+        List<Audit> audits = auditRepository.searchAfter(filter(), TURN_OF_MONTH, null, 10);
+
+        assertEquals(asList("audit-4", "audit-3", "audit-2", "audit-1"), ids(audits));
+    }
+
+    @Test
+    public void shouldResumeWithinFilteredAudits() {
+        AuditCriteria filter = new AuditCriteria.Builder().events(singletonList("APP_CREATED")).build();
+
+        assertEquals(asList("audit-5", "audit-3", "audit-1"), readAll(filter, 1));
+    }
+
+    @Test
+    public void shouldResumeWithinRange() {
+        AuditCriteria filter = new AuditCriteria.Builder().from(TURN_OF_MONTH).to(TURN_OF_MONTH).build();
+
+        assertEquals(asList("audit-4", "audit-3", "audit-2"), readAll(filter, 2));
+    }
+
+    private List<String> readAll(AuditCriteria filter, int limit) {
+        List<String> ids = new ArrayList<>();
+        long createdAt = 0;
+        String id = null;
+        List<Audit> audits;
+        do {
+            audits = auditRepository.searchAfter(filter, createdAt, id, limit);
+            assertTrue(audits.size() <= limit);
+            if (!audits.isEmpty()) {
+                Audit last = audits.get(audits.size() - 1);
+                createdAt = last.getCreatedAt().getTime();
+                id = last.getId();
+            }
+            ids.addAll(ids(audits));
+        } while (audits.size() == limit);
+        return ids;
+    }
+
+    private void create(String id, long createdAt, String event) throws Exception {
+        Audit audit = new Audit();
+        audit.setId(id);
+        audit.setCreatedAt(new Date(createdAt));
+        audit.setEvent(event);
+        audit.setReferenceType(Audit.AuditReferenceType.API);
+        audit.setReferenceId("api");
+        auditRepository.create(audit);
+    }
+
+    private static AuditCriteria filter() {
+        return new AuditCriteria.Builder().build();
+    }
+
+    private static List<String> ids(List<Audit> audits) {
+        return audits.stream().map(Audit::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import io.gravitee.repository.mongodb.management.internal.audit.AuditPartitions;
+import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Overflow policies, retries and metrics of the audit writer, bulk inserts going to an in-memory database which can be
+ * disconnected.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoAuditWriterTest {
+
+    private final FlakyDatabase database = new FlakyDatabase();
+    private final MongoAuditWriter writer = new MongoAuditWriter() {
+        @Override
+        void bulkInsert(String collection, List<DBObject> documents) {
+            database.insert(documents);
+        }
+    };
+    private final MockEnvironment environment = new MockEnvironment();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        environment.setProperty("management.mongodb.audit.writeBehind.queueSize", "2");
+        environment.setProperty("management.mongodb.audit.writeBehind.blockTimeout", "50");
+
+        ReflectionTestUtils.setField(writer, "environment", environment);
+        ReflectionTestUtils.setField(writer, "mongoTemplate", new OfflineMongoTemplate());
+        ReflectionTestUtils.setField(writer, "partitions", new AuditPartitions());
+        ReflectionTestUtils.setField(writer, "eventPublisher", new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(ApplicationEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void publishEvent(Object event) {
+                events.add(event);
+            }
+        });
+    }
+
+    @Test
+    public void shouldDropOverflow() {
+        configure("drop");
+
+        assertTrue(writer.offer(audit("1")));
+        assertTrue(writer.offer(audit("2")));
+        assertTrue(writer.offer(audit("3")));
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getOverflowCount());
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(0, writer.getBlockedCount());
+    }
+
+    @Test
+    public void shouldHandOverflowBackToCaller() {
+        configure("sync");
+
+        assertTrue(writer.offer(audit("1")));
+        assertTrue(writer.offer(audit("2")));
+        assertFalse(writer.offer(audit("3")));
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getOverflowCount());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void shouldHandOverflowBackToCallerAfterBlockTimeout() {
+        configure("block");
+
+        writer.offer(audit("1"));
+        writer.offer(audit("2"));
+        long start = System.currentTimeMillis();
+        assertFalse(writer.offer(audit("3")));
+
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(1, writer.getOverflowCount());
+        assertEquals(1, writer.getBlockedCount());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void shouldBlockUntilRoom() {
+        environment.setProperty("management.mongodb.audit.writeBehind.blockTimeout", "10000");
+        configure("block");
+
+        writer.offer(audit("1"));
+        writer.offer(audit("2"));
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Queue<?> queue = (Queue<?>) ReflectionTestUtils.getField(writer, "queue");
+            executor.schedule(queue::poll, 100, TimeUnit.MILLISECONDS);
+
+            assertTrue(writer.offer(audit("3")));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getBlockedCount());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void shouldKeepBatchWhenDatabaseFails() {
+        configure("drop");
+
+        assertFalse(writer.flush(Arrays.asList(audit("1"), audit("2"), audit("3"))));
+
+        // The batch is left to the caller, nothing is queued again, dropped or failed
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(0, writer.getOverflowCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(0, writer.getFailedCount());
+        assertEquals(0, writer.getWrittenCount());
+        assertEquals(1, writer.getFlushCount());
+        assertTrue(writer.getMaxFlushLatency() >= writer.getLastFlushLatency());
+        assertFalse(events.stream().anyMatch(event -> event instanceof AfterSaveEvent));
+    }
+
+    @Test
+    public void shouldRetryBatchWhenConnectionDropsMidBatch() throws Exception {
+        environment.setProperty("management.mongodb.audit.writeBehind.queueSize", "3");
+        environment.setProperty("management.mongodb.audit.writeBehind.maxBatchSize", "3");
+        database.connect();
+        database.dropAfter(1);
+        start("sync");
+
+        try {
+            assertTrue(writer.offer(audit("1")));
+            assertTrue(writer.offer(audit("2")));
+            assertTrue(writer.offer(audit("3")));
+
+            // The writer retries its batch without taking anything else from the queue, which fills up
+            waitFor(() -> database.getFailures() >= 3);
+            assertTrue(writer.offer(audit("4")));
+            assertTrue(writer.offer(audit("5")));
+            assertTrue(writer.offer(audit("6")));
+            assertFalse(writer.offer(audit("7")));
+
+            database.connect();
+            waitFor(() -> database.getIds().size() == 6);
+        } finally {
+            writer.stop();
+        }
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), database.getIds());
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(0, writer.getFailedCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(1, writer.getOverflowCount());
+    }
+
+    @Test
+    public void shouldWriteRemainingAuditsOnStop() throws Exception {
+        database.dropAfter(0);
+        start("block");
+
+        writer.offer(audit("1"));
+        writer.offer(audit("2"));
+        waitFor(() -> database.getFailures() >= 1);
+
+        database.connect();
+        writer.stop();
+
+        assertEquals(Arrays.asList("1", "2"), database.getIds());
+        assertEquals(0, writer.getFailedCount());
+        assertFalse(writer.offer(audit("3")));
+    }
+
+    @Test
+    public void shouldReportRemainingAuditsAsFailedAfterShutdownTimeout() throws Exception {
+        environment.setProperty("management.mongodb.audit.writeBehind.shutdownTimeout", "100");
+        start("block");
+
+        writer.offer(audit("1"));
+        writer.offer(audit("2"));
+        waitFor(() -> database.getFailures() >= 1);
+
+        long start = System.currentTimeMillis();
+        writer.stop();
+
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertTrue(database.getIds().isEmpty());
+        assertEquals(2, writer.getFailedCount());
+    }
+
+    @Test
+    public void shouldNotFlushEmptyBatch() {
+        configure("block");
+
+        assertTrue(writer.flush(Collections.emptyList()));
+        assertEquals(0, writer.getFlushCount());
+    }
+
+    private void start(String overflow) {
+        environment.setProperty("management.mongodb.audit.writeBehind.enabled", "true");
+        environment.setProperty("management.mongodb.audit.writeBehind.flushInterval", "20");
+        environment.setProperty("management.mongodb.audit.writeBehind.retryBackoff", "10");
+        environment.setProperty("management.mongodb.audit.writeBehind.maxRetryBackoff", "20");
+        environment.setProperty("management.mongodb.audit.writeBehind.overflow", overflow);
+        writer.start();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void configure(String overflow) {
+        environment.setProperty("management.mongodb.audit.writeBehind.overflow", overflow);
+        writer.configure();
+    }
+
+    private static AuditMongo audit(String id) {
+        AuditMongo audit = ModelSamples.sample(AuditMongo.class, 0);
+        audit.setId(id);
+        return audit;
+    }
+
+    /**
+     * Keeps the ids of the inserted documents, ignoring duplicates as a unique index does. While disconnected, any
+     * insert fails, and the connection can be set to drop in the middle of the next insert.
+     */
+    private static class FlakyDatabase {
+
+        private final List<Object> ids = new CopyOnWriteArrayList<>();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean connected;
+        private volatile int dropAfter = -1;
+
+        synchronized void insert(List<DBObject> documents) {
+            int inserted = 0;
+            for (DBObject document : documents) {
+                if (inserted == dropAfter) {
+                    connected = false;
+                    dropAfter = -1;
+                }
+                if (!connected) {
+                    failures.incrementAndGet();
+                    throw new MongoSocketReadException("Connection dropped", new ServerAddress());
+                }
+                if (!ids.contains(document.get("_id"))) {
+                    ids.add(document.get("_id"));
+                }
+                inserted++;
+            }
+        }
+
+        void connect() {
+            connected = true;
+        }
+
+        void dropAfter(int documents) {
+            dropAfter = documents;
+        }
+
+        int getFailures() {
+            return failures.get();
+        }
+
+        List<Object> getIds() {
+            return ids;
+        }
+    }
+}
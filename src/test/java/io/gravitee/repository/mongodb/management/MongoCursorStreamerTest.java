@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Cursors opened by {@link MongoCursorStreamer}, and the lazy mapping of their documents, against a collection kept
+ * in memory.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoCursorStreamerTest {
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final MongoCursorStreamer streamer = new MongoCursorStreamer();
+
+    private final InMemoryCursor cursor = new ObjenesisStd().newInstance(InMemoryCursor.class);
+    private final List<Object> events = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        cursor.documents = new ArrayList<>(asList(document("api-1"), document("api-2"), document("api-3")));
+
+        ReflectionTestUtils.setField(streamer, "mongoTemplate", new CursorTemplate(cursor));
+        ReflectionTestUtils.setField(streamer, "environment", environment);
+        ReflectionTestUtils.setField(streamer, "eventPublisher", Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {ApplicationEventPublisher.class},
+                (proxy, method, args) -> events.add(args[0])));
+    }
+
+    @Test
+    public void shouldMapDocumentsOneAtATime() {
+        streamer.init();
+
+        CloseableIterator<String> apis = streamer.stream(new Query(), ApiMongo.class, ApiMongo::getName);
+
+        assertTrue(apis.hasNext());
+        assertEquals("name of api-1", apis.next());
+        assertEquals(2, cursor.documents.size());
+        assertEquals(1, events.size());
+        assertTrue(events.get(0) instanceof AfterLoadEvent);
+
+        assertEquals("name of api-2", apis.next());
+        assertEquals("name of api-3", apis.next());
+        assertFalse(cursor.closed);
+        assertFalse(apis.hasNext());
+        assertTrue(cursor.closed);
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void shouldReadByBatches() {
+        streamer.init();
+        streamer.stream(new Query(), ApiMongo.class, ApiMongo::getId);
+        assertEquals(500, cursor.batchSize);
+
+        environment.setProperty("management.mongodb.stream.batchSize", "50");
+        streamer.init();
+        streamer.stream(new Query(), ApiMongo.class, ApiMongo::getId);
+        assertEquals(50, cursor.batchSize);
+    }
+
+    @Test
+    public void shouldApplyMappedQueryToCursor() {
+        streamer.init();
+
+        Query query = new Query(where("id").in("api-1", "api-2")).skip(1).limit(2);
+        query.fields().exclude("picture");
+        query.with(new Sort(Sort.Direction.DESC, "id"));
+        streamer.stream(query, ApiMongo.class, ApiMongo::getId);
+
+        assertEquals(new BasicDBObject("_id", new BasicDBObject("$in", asList("api-1", "api-2"))), cursor.query);
+        assertEquals(new BasicDBObject("picture", 0), cursor.fields);
+        assertEquals(new BasicDBObject("_id", -1), cursor.sort);
+        assertEquals(1, cursor.skip);
+        assertEquals(2, cursor.limit);
+    }
+
+    @Test
+    public void shouldNotApplyMissingFieldsSortSkipAndLimit() {
+        streamer.init();
+
+        streamer.stream(new Query(), ApiMongo.class, ApiMongo::getId);
+
+        assertEquals(new BasicDBObject(), cursor.query);
+        assertNull(cursor.fields);
+        assertNull(cursor.sort);
+        assertEquals(0, cursor.skip);
+        assertEquals(0, cursor.limit);
+    }
+
+    @Test
+    public void shouldCloseCursorOnClose() {
+        streamer.init();
+
+        CloseableIterator<String> apis = streamer.stream(new Query(), ApiMongo.class, ApiMongo::getId);
+        apis.next();
+        apis.close();
+
+        assertTrue(cursor.closed);
+        assertEquals(1, events.size());
+    }
+
+    private static DBObject document(String id) {
+        return new BasicDBObject("_id", id).append("name", "name of " + id);
+    }
+
+    private static class CursorTemplate extends OfflineMongoTemplate {
+
+        private final InMemoryCursor cursor;
+
+        private CursorTemplate(InMemoryCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public DBCollection getCollection(String collectionName) {
+            InMemoryCollection collection = new ObjenesisStd().newInstance(InMemoryCollection.class);
+            collection.cursor = cursor;
+            return collection;
+        }
+    }
+
+    private static class InMemoryCollection extends DBCollection {
+
+        private InMemoryCursor cursor;
+
+        private InMemoryCollection() {
+            super(null, null);
+        }
+
+        @Override
+        public DBCursor find(DBObject query, DBObject fields) {
+            cursor.query = query;
+            cursor.fields = fields;
+            return cursor;
+        }
+    }
+
+    private static class InMemoryCursor extends DBCursor {
+
+        private List<DBObject> documents;
+        private DBObject query;
+        private DBObject fields;
+        private DBObject sort;
+        private int batchSize;
+        private int skip;
+        private int limit;
+        private boolean closed;
+
+        private InMemoryCursor() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public DBCursor batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        @Override
+        public DBCursor sort(DBObject sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        @Override
+        public DBCursor skip(int skip) {
+            this.skip = skip;
+            return this;
+        }
+
+        @Override
+        public DBCursor limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !documents.isEmpty();
+        }
+
+        @Override
+        public DBObject next() {
+            return documents.remove(0);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
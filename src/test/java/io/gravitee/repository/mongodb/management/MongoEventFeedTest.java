@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.management.api.search.EventCriteria;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.EventType;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the incremental feed of events against the embedded database, through events updated at the same date, the
+ * <code>_id</code> of the last event read breaking the tie.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoEventFeedTest {
+
+    private static final long UPDATED_AT = 1486000000000L;
+
+    @Autowired
+    private MongoEventRepository eventRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoTemplate.dropCollection(EventMongo.class);
+
+        create("event-1", UPDATED_AT - 1000, EventType.PUBLISH_API);
+        create("event-2", UPDATED_AT, EventType.PUBLISH_API);
+        create("event-3", UPDATED_AT, EventType.STOP_API);
+        create("event-4", UPDATED_AT, EventType.PUBLISH_API);
+        create("event-5", UPDATED_AT + 1000, EventType.STOP_API);
+    }
+
+    @Test
+    public void shouldReadAllEventsOnce() {
+        assertEquals(asList("event-1", "event-2", "event-3", "event-4", "event-5"), readAll(null, 10));
+    }
+
+    @Test
+    public void shouldResumeWithinEventsUpdatedAtSameDate() {
+        assertEquals(asList("event-1", "event-2", "event-3", "event-4", "event-5"), readAll(null, 2));
+    }
+
+    @Test
+    public void shouldResumeFromIdAtDate() {
+        List<Event> events = eventRepository.findAfter(null, UPDATED_AT, "event-3", 10);
+
+        assertEquals(asList("event-4", "event-5"), ids(events));
+    }
+
+    @Test
+    public void shouldIncludeEventsAtDateWithoutId() {
+        List<Event> events = eventRepository.findAfter(null, UPDATED_AT, null, 10);
+
+        assertEquals(asList("event-2", "event-3", "event-4", "event-5"), ids(events));
+    }
+
+    @Test
+    public void shouldResumeWithinFilteredEvents() {
+        EventCriteria filter = new EventCriteria.Builder().types(EventType.PUBLISH_API).build();
+
+        assertEquals(asList("event-1", "event-2", "event-4"), readAll(filter, 1));
+    }
+
+    @Test
+    public void shouldReadEventUpdatedAfterPosition() throws Exception {
+        List<Event> events = eventRepository.findAfter(null, UPDATED_AT + 1000, "event-5", 10);
+        assertTrue(events.isEmpty());
+
+        create("event-0", UPDATED_AT + 2000, EventType.START_API);
+
+        events = eventRepository.findAfter(null, UPDATED_AT + 1000, "event-5", 10);
+        assertEquals(Collections.singletonList("event-0"), ids(events));
+    }
+
+    private List<String> readAll(EventCriteria filter, int limit) {
+        List<String> ids = new ArrayList<>();
+        long updatedAt = 0;
+        String id = null;
+        List<Event> events;
+        do {
+            events = eventRepository.findAfter(filter, updatedAt, id, limit);
+            assertTrue(events.size() <= limit);
+            if (!events.isEmpty()) {
+                Event last = events.get(events.size() - 1);
+                updatedAt = last.getUpdatedAt().getTime();
+                id = last.getId();
+            }
+            ids.addAll(ids(events));
+        } while (events.size() == limit);
+        return ids;
+    }
+
+    private void create(String id, long updatedAt, EventType type) throws Exception {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(type);
+        event.setPayload("{}");
+        event.setCreatedAt(new Date(updatedAt));
+        event.setUpdatedAt(new Date(updatedAt));
+        eventRepository.create(event);
+    }
+
+    private static List<String> ids(List<Event> events) {
+        return events.stream().map(Event::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.repository.management.api.EventRepository;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.EventType;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import io.gravitee.repository.mongodb.management.internal.model.EventPayloadMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the reference counting of deduplicated event payloads against the embedded database.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+@TestPropertySource(properties = "management.mongodb.event.payload.storage=dedup")
+public class MongoEventPayloadStoreTest {
+
+    @Autowired
+    private MongoEventPayloadStore payloadStore;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() {
+        mongoTemplate.dropCollection(EventMongo.class);
+        mongoTemplate.dropCollection(EventPayloadMongo.class);
+    }
+
+    @Test
+    public void shouldStoreSamePayloadOnce() {
+        String hash = payloadStore.acquire("payload");
+
+        assertEquals(hash, payloadStore.acquire("payload"));
+        assertEquals(1, mongoTemplate.count(new Query(), EventPayloadMongo.class));
+        assertEquals(2, references(hash));
+    }
+
+    @Test
+    public void shouldStoreDistinctPayloads() {
+        String first = payloadStore.acquire("first");
+        String second = payloadStore.acquire("second");
+
+        assertNotEquals(first, second);
+        Map<String, String> payloads = payloadStore.load(Arrays.asList(first, second, "unknown"));
+        assertEquals(2, payloads.size());
+        assertEquals("first", payloads.get(first));
+        assertEquals("second", payloads.get(second));
+    }
+
+    @Test
+    public void shouldRemovePayloadWithLastReference() {
+        String hash = payloadStore.acquire("payload");
+        payloadStore.acquire("payload");
+
+        payloadStore.release(hash);
+        assertEquals(1, references(hash));
+
+        payloadStore.release(hash);
+        assertNull(mongoTemplate.findById(hash, EventPayloadMongo.class));
+    }
+
+    @Test
+    public void shouldSharePayloadBetweenEvents() throws Exception {
+        eventRepository.create(event("event-1", "payload"));
+        eventRepository.create(event("event-2", "payload"));
+        String hash = hash("event-1");
+
+        assertEquals(hash, hash("event-2"));
+        assertEquals(2, references(hash));
+
+        eventRepository.delete("event-1");
+        assertEquals(1, references(hash));
+        assertEquals("payload", eventRepository.findById("event-2").get().getPayload());
+
+        eventRepository.delete("event-2");
+        assertNull(mongoTemplate.findById(hash, EventPayloadMongo.class));
+    }
+
+    @Test
+    public void shouldReleaseReplacedPayload() throws Exception {
+        Event event = eventRepository.create(event("event-1", "first"));
+        String first = hash("event-1");
+
+        event.setPayload("second");
+        eventRepository.update(event);
+
+        assertNull(mongoTemplate.findById(first, EventPayloadMongo.class));
+        assertEquals(1, references(hash("event-1")));
+        assertEquals("second", eventRepository.findById("event-1").get().getPayload());
+    }
+
+    private int references(String hash) {
+        return mongoTemplate.findById(hash, EventPayloadMongo.class).getReferences();
+    }
+
+    private String hash(String eventId) {
+        return mongoTemplate.findById(eventId, EventMongo.class).getPayloadHash();
+    }
+
+    private static Event event(String id, String payload) {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(EventType.PUBLISH_API);
+        event.setPayload(payload);
+        event.setCreatedAt(new Date());
+        event.setUpdatedAt(event.getCreatedAt());
+        return event;
+    }
+}
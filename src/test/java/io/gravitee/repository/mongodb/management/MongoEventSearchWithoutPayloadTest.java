@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import io.gravitee.common.data.domain.Page;
+import io.gravitee.repository.management.api.search.EventCriteria;
+import io.gravitee.repository.management.api.search.Pageable;
+import io.gravitee.repository.management.api.search.builder.PageableBuilder;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.EventType;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import io.gravitee.repository.mongodb.management.internal.model.EventPayloadMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the event searches without payload, and the batched payload fetch, against the embedded database.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoEventSearchWithoutPayloadTest {
+
+    private static final long UPDATED_AT = 1486000000000L;
+
+    @Autowired
+    private MongoEventRepository eventRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoTemplate.dropCollection(EventMongo.class);
+        mongoTemplate.dropCollection(EventPayloadMongo.class);
+
+        create("event-1", 1, EventType.PUBLISH_API, "payload-1");
+        create("event-2", 2, EventType.STOP_API, "payload-2");
+        create("event-3", 3, EventType.PUBLISH_API, "payload-1");
+        create("event-4", 4, EventType.PUBLISH_API, null);
+    }
+
+    @Test
+    public void shouldSearchSameEventsWithoutPayload() {
+        EventCriteria filter = new EventCriteria.Builder().types(EventType.PUBLISH_API).build();
+
+        List<Event> events = eventRepository.searchWithoutPayload(filter);
+
+        assertEquals(ids(eventRepository.search(filter)), ids(events));
+        assertEquals(asList("event-4", "event-3", "event-1"), ids(events));
+        events.forEach(event -> assertNull(event.getPayload()));
+    }
+
+    @Test
+    public void shouldSearchSamePageWithoutPayload() {
+        EventCriteria filter = new EventCriteria.Builder().build();
+        Pageable pageable = new PageableBuilder().pageNumber(1).pageSize(2).build();
+
+        Page<Event> page = eventRepository.searchWithoutPayload(filter, pageable);
+        Page<Event> fullPage = eventRepository.search(filter, pageable);
+
+        assertEquals(ids(fullPage.getContent()), ids(page.getContent()));
+        assertEquals(fullPage.getTotalElements(), page.getTotalElements());
+        assertEquals(4, page.getTotalElements());
+        page.getContent().forEach(event -> assertNull(event.getPayload()));
+    }
+
+    @Test
+    public void shouldFindPayloadsOfEvents() {
+        Map<String, String> payloads = eventRepository.findPayloads(asList("event-1", "event-2", "event-3"));
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("event-1", "payload-1");
+        expected.put("event-2", "payload-2");
+        expected.put("event-3", "payload-1");
+        assertEquals(expected, payloads);
+    }
+
+    @Test
+    public void shouldOmitEventsWithoutPayload() {
+        Map<String, String> payloads = eventRepository.findPayloads(asList("event-2", "event-4", "unknown"));
+
+        assertEquals(Collections.singletonMap("event-2", "payload-2"), payloads);
+        assertTrue(eventRepository.findPayloads(Collections.emptyList()).isEmpty());
+    }
+
+    private void create(String id, long updatedAt, EventType type, String payload) throws Exception {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(type);
+        event.setPayload(payload);
+        event.setCreatedAt(new Date(UPDATED_AT + updatedAt));
+        event.setUpdatedAt(new Date(UPDATED_AT + updatedAt));
+        eventRepository.create(event);
+    }
+
+    private static List<String> ids(List<Event> events) {
+        return events.stream().map(Event::getId).collect(Collectors.toList());
+    }
+}
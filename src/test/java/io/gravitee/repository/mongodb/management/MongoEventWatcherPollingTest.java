@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import org.bson.types.BSONTimestamp;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the same scenarios as {@link MongoEventWatcherTest}, polling the events collection.
+ *
+ * @author GraviteeSource Team
+ */
+@TestPropertySource(properties = "management.mongodb.events.watch.mode=polling")
+public class MongoEventWatcherPollingTest extends MongoEventWatcherTest {
+
+    /**
+     * Position at the given time, as saved by oplog tailing.
+     */
+    @Override
+    protected BasicDBObject otherModePosition(long time) {
+        return new BasicDBObject("ts", new BSONTimestamp((int) (time / 1000), 0));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import io.gravitee.repository.management.api.EventRepository;
+import io.gravitee.repository.management.model.Event;
+import io.gravitee.repository.management.model.EventType;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.EventMongo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the watcher against the embedded replica set, tailing the oplog.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+@TestPropertySource(properties = {
+        "management.mongodb.events.watch.mode=oplog",
+        "management.mongodb.events.watch.pollInterval=50",
+        "management.mongodb.events.watch.maxPollInterval=200"})
+public class MongoEventWatcherTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Autowired
+    private MongoEventWatcher watcher;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final BlockingQueue<Event> received = new LinkedBlockingQueue<>();
+
+    private final List<MongoEventWatcher.Subscription> subscriptions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mongoTemplate.dropCollection(EventMongo.class);
+        mongoTemplate.dropCollection(MongoEventWatcher.SUBSCRIPTIONS_COLLECTION);
+    }
+
+    @After
+    public void tearDown() {
+        subscriptions.forEach(MongoEventWatcher.Subscription::close);
+    }
+
+    @Test
+    public void shouldDeliverInsertedAndUpdatedEvents() throws Exception {
+        subscribe("insert-update");
+
+        Event event = eventRepository.create(event("event-1", "created"));
+        assertReceived("event-1", "created");
+
+        event.setPayload("updated");
+        event.setUpdatedAt(new Date(event.getUpdatedAt().getTime() + 1000));
+        eventRepository.update(event);
+        assertReceived("event-1", "updated");
+    }
+
+    @Test
+    public void shouldResumeAfterSubscribingAgain() throws Exception {
+        MongoEventWatcher.Subscription subscription = subscribe("resume");
+
+        eventRepository.create(event("event-1", "first"));
+        assertReceived("event-1", "first");
+
+        subscription.close();
+        eventRepository.create(event("event-2", "second"));
+
+        subscribe("resume");
+        assertReceived("event-2", "second");
+    }
+
+    @Test
+    public void shouldResumeFromPositionOfOtherMode() throws Exception {
+        Event event = event("event-1", "missed");
+        event.setCreatedAt(new Date(System.currentTimeMillis() - 5000));
+        event.setUpdatedAt(event.getCreatedAt());
+        eventRepository.create(event);
+
+        // Saved before the event was written, by a subscriber which was using the other mode
+        mongoTemplate.getCollection(MongoEventWatcher.SUBSCRIPTIONS_COLLECTION).insert(
+                otherModePosition(event.getUpdatedAt().getTime() - 10000).append("_id", "switch"));
+
+        subscribe("switch");
+        assertReceived("event-1", "missed");
+    }
+
+    /**
+     * Position at the given time, as saved by polling.
+     */
+    protected BasicDBObject otherModePosition(long time) {
+        return new BasicDBObject("updatedAt", new Date(time));
+    }
+
+    private MongoEventWatcher.Subscription subscribe(String subscriberId) throws InterruptedException {
+        boolean known = position(subscriberId);
+        MongoEventWatcher.Subscription subscription = watcher.subscribe(subscriberId, received::add);
+        subscriptions.add(subscription);
+
+        // A new subscriber starts from the moment its position is first saved
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!known && !position(subscriberId)) {
+            assertTrue("Subscription has not started", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+
+        return subscription;
+    }
+
+    private boolean position(String subscriberId) {
+        return mongoTemplate.getCollection(MongoEventWatcher.SUBSCRIPTIONS_COLLECTION).count(
+                new BasicDBObject("_id", subscriberId)) > 0;
+    }
+
+    /**
+     * Events are delivered at least once, so an event already received may come again before the expected one.
+     */
+    private void assertReceived(String id, String payload) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        Event event;
+        do {
+            event = received.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            assertNotNull("Event [" + id + "] has not been received", event);
+        } while (!id.equals(event.getId()) || !payload.equals(event.getPayload()));
+    }
+
+    private static Event event(String id, String payload) {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(EventType.PUBLISH_API);
+        event.setPayload(payload);
+        event.setCreatedAt(new Date());
+        event.setUpdatedAt(event.getCreatedAt());
+        return event;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import io.gravitee.repository.management.api.ApiRepository;
+import io.gravitee.repository.management.model.Api;
+import io.gravitee.repository.management.model.Visibility;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the pictures of APIs stored in GridFS against the embedded database.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ManagementRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+@TestPropertySource(properties = {
+        "management.mongodb.picture.storage=gridfs",
+        "management.mongodb.picture.migration.enabled=false"})
+public class MongoPictureStoreTest {
+
+    @Autowired
+    private ApiRepository apiRepository;
+
+    @Autowired
+    private MongoPictureStore pictureStore;
+
+    @Autowired
+    private GridFsTemplate pictureGridFsTemplate;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() {
+        mongoTemplate.dropCollection(ApiMongo.class);
+        pictureGridFsTemplate.delete(new Query());
+    }
+
+    @Test
+    public void shouldListApisWithTheirPictures() throws Exception {
+        apiRepository.create(api("api-1", "picture-1"));
+        apiRepository.create(api("api-2", "picture-2"));
+        apiRepository.create(api("api-3", null));
+
+        Map<String, String> pictures = apiRepository.findByIds(Arrays.asList("api-1", "api-2", "api-3")).stream()
+                .filter(api -> api.getPicture() != null)
+                .collect(Collectors.toMap(Api::getId, Api::getPicture));
+
+        assertEquals(2, pictures.size());
+        assertEquals("picture-1", pictures.get("api-1"));
+        assertEquals("picture-2", pictures.get("api-2"));
+    }
+
+    @Test
+    public void shouldLoadPicturesSpanningSeveralChunks() {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 1024 * 1024) {
+            large.append("data:image/png;base64,0123456789");
+        }
+
+        MongoPictureStore.StoredPicture first = pictureStore.store("apis", "api-1", large.toString());
+        MongoPictureStore.StoredPicture second = pictureStore.store("apis", "api-2", "small");
+
+        Map<String, String> pictures = pictureStore.loadAll(Arrays.asList(first.id, second.id, first.id));
+
+        assertEquals(2, pictures.size());
+        assertEquals(large.toString(), pictures.get(first.id));
+        assertEquals("small", pictures.get(second.id));
+    }
+
+    @Test
+    public void shouldDiscardPictureMigratedWhileChanged() {
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(ApiMongo.class))
+                .insert(new BasicDBObject("_id", "api-1").append("picture", "inline"));
+
+        // The picture of the API is changed while it is moved to GridFS
+        MongoPictureStore racingStore = new MongoPictureStore() {
+            @Override
+            StoredPicture store(String collection, String id, String picture) {
+                StoredPicture stored = pictureStore.store(collection, id, picture);
+                mongoTemplate.getCollection(collection).update(new BasicDBObject("_id", id),
+                        new BasicDBObject("$set", new BasicDBObject("picture", "changed")));
+                return stored;
+            }
+        };
+        ReflectionTestUtils.setField(racingStore, "pictureGridFsTemplate", pictureGridFsTemplate);
+
+        MongoPictureMigration migration = new MongoPictureMigration();
+        ReflectionTestUtils.setField(migration, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(migration, "pictureStore", racingStore);
+        migration.migrate(ApiMongo.class);
+
+        assertTrue(pictureGridFsTemplate.find(new Query()).isEmpty());
+        assertEquals("changed", mongoTemplate.getCollection(mongoTemplate.getCollectionName(ApiMongo.class))
+                .findOne(new BasicDBObject("_id", "api-1")).get("picture"));
+    }
+
+    private static Api api(String id, String picture) {
+        Api api = new Api();
+        api.setId(id);
+        api.setName(id);
+        api.setVersion("1");
+        api.setVisibility(Visibility.PUBLIC);
+        api.setPicture(picture);
+        return api;
+    }
+}
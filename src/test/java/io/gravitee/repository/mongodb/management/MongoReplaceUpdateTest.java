@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.model.ApiKeyMongo;
+import io.gravitee.repository.mongodb.management.internal.model.PlanMongo;
+import io.gravitee.repository.mongodb.management.internal.model.SubscriptionMongo;
+import org.bson.types.Binary;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that applying the update built for an entity gives the document <code>save</code> would write.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoReplaceUpdateTest {
+
+    private final MongoReplaceUpdate replaceUpdate = new MongoReplaceUpdate();
+    private final MongoTextCompression textCompression = new MongoTextCompression();
+    private final MockEnvironment environment = new MockEnvironment();
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setUp() {
+        // Documents are only converted, the database is never reached
+        mongoTemplate = new OfflineMongoTemplate();
+
+        ReflectionTestUtils.setField(textCompression, "environment", environment);
+        textCompression.init();
+
+        ReflectionTestUtils.setField(replaceUpdate, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(replaceUpdate, "eventPublisher", new ApplicationEventPublisher() {
+            @Override
+            public void publishEvent(ApplicationEvent event) {
+                textCompression.onApplicationEvent((MongoMappingEvent<?>) event);
+            }
+
+            @Override
+            public void publishEvent(Object event) {
+                publishEvent((ApplicationEvent) event);
+            }
+        });
+    }
+
+    @Test
+    public void shouldReplacePlan() {
+        checkReplacement(ModelSamples.sample(PlanMongo.class, 0));
+    }
+
+    @Test
+    public void shouldReplaceSubscription() {
+        checkReplacement(ModelSamples.sample(SubscriptionMongo.class, 0));
+    }
+
+    @Test
+    public void shouldReplaceApiKey() {
+        checkReplacement(ModelSamples.sample(ApiKeyMongo.class, 0));
+    }
+
+    @Test
+    public void shouldUnsetPropertiesWithoutValue() {
+        PlanMongo plan = ModelSamples.sample(PlanMongo.class, 0);
+        plan.setDescription(null);
+        plan.setClosedAt(null);
+        plan.setCreatedAt(null);
+
+        DBObject update = replaceUpdate.of(plan).getUpdateObject();
+
+        DBObject unset = (DBObject) update.get("$unset");
+        assertEquals(new HashSet<>(Arrays.asList("description", "closedAt", "createdAt")), unset.keySet());
+        assertFalse(((DBObject) update.get("$set")).containsField("description"));
+        checkReplacement(plan);
+    }
+
+    @Test
+    public void shouldCompressDefinition() {
+        environment.setProperty("management.mongodb.compression.enabled", "true");
+        environment.setProperty("management.mongodb.compression.threshold", "16");
+        textCompression.init();
+
+        PlanMongo plan = ModelSamples.sample(PlanMongo.class, 1024);
+
+        DBObject set = (DBObject) replaceUpdate.of(plan).getUpdateObject().get("$set");
+
+        assertTrue(set.get("definition") instanceof Binary);
+        assertEquals(plan.getDefinition(), textCompression.decompress(set.get("definition")));
+    }
+
+    @Test
+    public void shouldOverwriteCreationDate() {
+        PlanMongo plan = ModelSamples.sample(PlanMongo.class, 0);
+        plan.setCreatedAt(new Date(42));
+
+        DBObject set = (DBObject) replaceUpdate.of(plan).getUpdateObject().get("$set");
+
+        assertEquals(new Date(42), set.get("createdAt"));
+    }
+
+    private void checkReplacement(Object entity) {
+        DBObject saved = new BasicDBObject();
+        mongoTemplate.getConverter().write(entity, saved);
+
+        Update update = replaceUpdate.of(entity);
+        DBObject set = (DBObject) update.getUpdateObject().get("$set");
+        assertFalse(set.containsField("_id"));
+
+        // The stored document keeps its id, everything else comes from the update
+        DBObject updated = new BasicDBObject("_id", saved.get("_id"));
+        updated.putAll(set);
+        assertEquals(saved, updated);
+    }
+}
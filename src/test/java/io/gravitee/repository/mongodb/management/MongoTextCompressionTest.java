@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.gravitee.repository.mongodb.management.internal.model.ApiMongo;
+import io.gravitee.repository.mongodb.management.internal.model.UserMongo;
+import org.bson.types.Binary;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class MongoTextCompressionTest {
+
+    private final MongoTextCompression compression = new MongoTextCompression();
+    private final MockEnvironment environment = new MockEnvironment();
+
+    private final String text = text(8192);
+
+    @Before
+    public void setUp() {
+        environment.setProperty("management.mongodb.compression.enabled", "true");
+        ReflectionTestUtils.setField(compression, "environment", environment);
+        compression.init();
+    }
+
+    @Test
+    public void shouldRoundTripWithGzip() {
+        Object compressed = compression.compress(text);
+
+        assertCompressed(compressed, 1);
+        assertEquals(text, compression.decompress(compressed));
+    }
+
+    @Test
+    public void shouldRoundTripWithDeflate() {
+        environment.setProperty("management.mongodb.compression.algorithm", "deflate");
+        compression.init();
+
+        Object compressed = compression.compress(text);
+
+        assertCompressed(compressed, 2);
+        assertEquals(text, compression.decompress(compressed));
+    }
+
+    @Test
+    public void shouldRoundTripNonAsciiText() {
+        String unicode = text.replace('a', 'é') + "☃";
+
+        assertEquals(unicode, compression.decompress(compression.compress(unicode)));
+    }
+
+    @Test
+    public void shouldKeepSmallText() {
+        assertEquals("small", compression.compress("small"));
+    }
+
+    @Test
+    public void shouldKeepTextWhenDisabled() {
+        environment.setProperty("management.mongodb.compression.enabled", "false");
+        compression.init();
+
+        assertSame(text, compression.compress(text));
+    }
+
+    @Test
+    public void shouldReadLegacyPlainString() {
+        assertEquals("plain", compression.decompress("plain"));
+        assertNull(compression.decompress(null));
+    }
+
+    @Test
+    public void shouldReadCompressedTextWhenDisabled() {
+        Object compressed = compression.compress(text);
+
+        environment.setProperty("management.mongodb.compression.enabled", "false");
+        compression.init();
+
+        assertEquals(text, compression.decompress(compressed));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectUnknownAlgorithm() {
+        compression.decompress(new Binary(MongoTextCompression.BINARY_SUBTYPE, new byte[]{42, 1, 2}));
+    }
+
+    @Test
+    public void shouldCompressFieldBeforeSave() {
+        DBObject document = new BasicDBObject("definition", text).append("name", text);
+
+        compression.onApplicationEvent(new BeforeSaveEvent<>(new ApiMongo(), document));
+
+        assertCompressed(document.get("definition"), 1);
+        assertEquals(text, document.get("name"));
+    }
+
+    @Test
+    public void shouldNotCompressFieldsOfOtherEntities() {
+        DBObject document = new BasicDBObject("definition", text);
+
+        compression.onApplicationEvent(new BeforeSaveEvent<>(new UserMongo(), document));
+
+        assertEquals(text, document.get("definition"));
+    }
+
+    @Test
+    public void shouldDecompressFieldAfterLoad() {
+        DBObject compressed = new BasicDBObject("definition", compression.compress(text));
+        DBObject plain = new BasicDBObject("definition", "plain");
+
+        compression.onApplicationEvent(new AfterLoadEvent<>(compressed, ApiMongo.class));
+        compression.onApplicationEvent(new AfterLoadEvent<>(plain, ApiMongo.class));
+
+        assertEquals(text, compressed.get("definition"));
+        assertEquals("plain", plain.get("definition"));
+    }
+
+    private static void assertCompressed(Object value, int algorithm) {
+        assertTrue(value instanceof Binary);
+        Binary binary = (Binary) value;
+        assertEquals(MongoTextCompression.BINARY_SUBTYPE, binary.getType());
+        assertEquals(algorithm, binary.getData()[0]);
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append("{\"name\":\"a\",\"value\":").append(text.length()).append('}');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management;
+
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * A template whose converter works without a database, any operation reaching the database failing with an
+ * {@link UnsupportedOperationException}.
+ *
+ * @author GraviteeSource Team
+ */
+class OfflineMongoTemplate extends MongoTemplate {
+
+    OfflineMongoTemplate() {
+        super((MongoDbFactory) Proxy.newProxyInstance(OfflineMongoTemplate.class.getClassLoader(),
+                new Class<?>[] {MongoDbFactory.class}, (proxy, method, args) -> {
+                    if (method.getReturnType() == PersistenceExceptionTranslator.class) {
+                        return new MongoExceptionTranslator();
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                }));
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.internal.audit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+/**
+ * Routing of audits to their monthly partition, and partitions read by searches, against a template which only knows
+ * the names of its collections.
+ *
+ * @author GraviteeSource Team
+ */
+public class AuditPartitionsTest {
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final CollectionsTemplate mongoTemplate = new CollectionsTemplate();
+    private final AuditPartitions partitions = new AuditPartitions();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(partitions, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(partitions, "environment", environment);
+    }
+
+    @Test
+    public void shouldNotPartitionByDefault() {
+        mongoTemplate.collections.addAll(asList("audits", "audits_201701"));
+
+        partitions.init();
+
+        assertFalse(partitions.isEnabled());
+        assertEquals(singletonList("audits"), mongoTemplate.indexed);
+    }
+
+    @Test
+    public void shouldRouteAuditToPartitionOfItsMonthInUtc() {
+        init();
+
+        Date createdAt = Date.from(OffsetDateTime.of(2017, 1, 31, 23, 30, 0, 0, ZoneOffset.ofHours(-1)).toInstant());
+
+        assertEquals("audits_201702", partitions.collectionFor(createdAt));
+        assertEquals("audits_201702", partitions.collectionFor(createdAt));
+        assertEquals(asList("audits", "audits_201702"), mongoTemplate.indexed);
+    }
+
+    @Test
+    public void shouldRouteAuditWithoutDateToCurrentMonth() {
+        init();
+
+        assertEquals("audits_" + YearMonth.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyyMM")),
+                partitions.collectionFor(null));
+    }
+
+    @Test
+    public void shouldReadAllPartitionsFromMostRecent() {
+        mongoTemplate.collections.addAll(asList("audits", "audits_201701", "audits_201703", "audits_201702",
+                "audits_backup", "events"));
+        init();
+
+        assertEquals(asList("audits_201703", "audits_201702", "audits_201701", "audits"),
+                partitions.collectionsFor(0, 0));
+    }
+
+    @Test
+    public void shouldOnlyReadPartitionsOverlappingRange() {
+        mongoTemplate.collections.addAll(asList("audits", "audits_201701", "audits_201702", "audits_201703"));
+        init();
+
+        assertEquals(asList("audits_201702", "audits"),
+                partitions.collectionsFor(millis(2017, 2, 1), millis(2017, 2, 28)));
+        assertEquals(asList("audits_201703", "audits_201702", "audits"),
+                partitions.collectionsFor(millis(2017, 2, 15), 0));
+        assertEquals(asList("audits_201701", "audits"),
+                partitions.collectionsFor(0, millis(2017, 1, 31)));
+        assertEquals(singletonList("audits"),
+                partitions.collectionsFor(millis(2017, 4, 1), 0));
+    }
+
+    @Test
+    public void shouldReadPartitionOnceWritten() {
+        init();
+        assertEquals(singletonList("audits"), partitions.collectionsFor(0, 0));
+
+        partitions.collectionFor(new Date(millis(2017, 5, 10)));
+
+        assertEquals(asList("audits_201705", "audits"), partitions.collectionsFor(0, 0));
+    }
+
+    @Test
+    public void shouldDropPartitionsOlderThanRetention() {
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        String current = partition(now);
+        String previous = partition(now.minusMonths(1));
+        String expired = partition(now.minusMonths(2));
+        mongoTemplate.collections.addAll(asList("audits", current, previous, expired));
+        init();
+        ReflectionTestUtils.setField(partitions, "retention", 2);
+
+        partitions.dropExpired();
+
+        assertEquals(singletonList(expired), mongoTemplate.dropped);
+        assertEquals(asList(current, previous, "audits"), partitions.collectionsFor(0, 0));
+    }
+
+    private void init() {
+        environment.setProperty("management.mongodb.audit.partitioning", "monthly");
+        partitions.init();
+    }
+
+    private static long millis(int year, int month, int day) {
+        return OffsetDateTime.of(year, month, day, 12, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static String partition(YearMonth month) {
+        return "audits_" + month.format(DateTimeFormatter.ofPattern("yyyyMM"));
+    }
+
+    private static class CollectionsTemplate extends MongoTemplate {
+
+        private final Set<String> collections = new LinkedHashSet<>();
+        private final List<String> indexed = new ArrayList<>();
+        private final List<String> dropped = new ArrayList<>();
+
+        private CollectionsTemplate() {
+            super((MongoDbFactory) Proxy.newProxyInstance(CollectionsTemplate.class.getClassLoader(),
+                    new Class<?>[] {MongoDbFactory.class}, (proxy, method, args) -> {
+                        if (method.getReturnType() == PersistenceExceptionTranslator.class) {
+                            return new MongoExceptionTranslator();
+                        }
+                        throw new UnsupportedOperationException(method.toString());
+                    }));
+        }
+
+        @Override
+        public Set<String> getCollectionNames() {
+            return new LinkedHashSet<>(collections);
+        }
+
+        @Override
+        public IndexOperations indexOps(String collectionName) {
+            indexed.add(collectionName);
+            return (IndexOperations) Proxy.newProxyInstance(CollectionsTemplate.class.getClassLoader(),
+                    new Class<?>[] {IndexOperations.class}, (proxy, method, args) -> null);
+        }
+
+        @Override
+        public void dropCollection(String collectionName) {
+            dropped.add(collectionName);
+            collections.remove(collectionName);
+        }
+    }
+}
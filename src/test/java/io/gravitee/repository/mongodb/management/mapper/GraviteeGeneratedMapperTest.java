@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.mapper;
+
+import io.gravitee.repository.management.model.*;
+import io.gravitee.repository.mongodb.management.ModelSamples;
+import io.gravitee.repository.mongodb.management.internal.model.*;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks, field by field, that the generated mapper gives the same result as Dozer.
+ *
+ * @author GraviteeSource Team
+ */
+public class GraviteeGeneratedMapperTest {
+
+    private final GraviteeMapper dozerMapper = new GraviteeDozerMapper();
+    private final GraviteeMapper generatedMapper = new GraviteeGeneratedMapper();
+
+    @Test
+    public void shouldMapApi() throws Exception {
+        checkMapping(Api.class, ApiMongo.class);
+    }
+
+    @Test
+    public void shouldMapApiKey() throws Exception {
+        checkMapping(ApiKey.class, ApiKeyMongo.class);
+    }
+
+    @Test
+    public void shouldMapApplication() throws Exception {
+        checkMapping(Application.class, ApplicationMongo.class);
+    }
+
+    @Test
+    public void shouldMapAudit() throws Exception {
+        checkMapping(Audit.class, AuditMongo.class);
+    }
+
+    @Test
+    public void shouldMapEvent() throws Exception {
+        checkMapping(Event.class, EventMongo.class);
+    }
+
+    @Test
+    public void shouldMapGroup() throws Exception {
+        checkMapping(Group.class, GroupMongo.class);
+    }
+
+    @Test
+    public void shouldMapPage() throws Exception {
+        checkMapping(Page.class, PageMongo.class);
+    }
+
+    @Test
+    public void shouldMapPlan() throws Exception {
+        checkMapping(Plan.class, PlanMongo.class);
+    }
+
+    @Test
+    public void shouldMapSubscription() throws Exception {
+        checkMapping(Subscription.class, SubscriptionMongo.class);
+    }
+
+    @Test
+    public void shouldMapTag() throws Exception {
+        checkMapping(Tag.class, TagMongo.class);
+    }
+
+    @Test
+    public void shouldMapTenant() throws Exception {
+        checkMapping(Tenant.class, TenantMongo.class);
+    }
+
+    @Test
+    public void shouldMapUser() throws Exception {
+        checkMapping(User.class, UserMongo.class);
+    }
+
+    @Test
+    public void shouldMapView() throws Exception {
+        checkMapping(View.class, ViewMongo.class);
+    }
+
+    @Test
+    public void shouldMapEmptyObjects() throws Exception {
+        assertSameFields(dozerMapper.map(new Page(), PageMongo.class), generatedMapper.map(new Page(), PageMongo.class));
+        assertSameFields(dozerMapper.map(new PageMongo(), Page.class), generatedMapper.map(new PageMongo(), Page.class));
+        assertNull(generatedMapper.map(null, Api.class));
+    }
+
+    @Test
+    public void shouldMapCollections() throws Exception {
+        List<UserMongo> users = dozerMapper.collection2list(ModelSamples.samples(User.class, 2, 0),
+                User.class, UserMongo.class);
+
+        List<User> expected = dozerMapper.collection2list(users, UserMongo.class, User.class);
+        List<User> actual = generatedMapper.collection2list(users, UserMongo.class, User.class);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameFields(expected.get(i), actual.get(i));
+        }
+
+        assertEquals(2, generatedMapper.collection2set(users, UserMongo.class, User.class).size());
+    }
+
+    private <D, M> void checkMapping(Class<D> domainClass, Class<M> mongoClass) throws Exception {
+        D domain = ModelSamples.sample(domainClass, 0);
+
+        M mongo = dozerMapper.map(domain, mongoClass);
+        assertSameFields(mongo, generatedMapper.map(domain, mongoClass));
+
+        D fromDozer = dozerMapper.map(mongo, domainClass);
+        D fromGenerated = generatedMapper.map(mongo, domainClass);
+        assertSameFields(fromDozer, fromGenerated);
+
+        // Every field has a value, so the round trip also checks that no field has been left out
+        assertSameFields(domain, fromGenerated);
+    }
+
+    private static void assertSameFields(Object expected, Object actual) throws Exception {
+        assertSameValue("", expected, actual);
+    }
+
+    private static void assertSameValue(String path, Object expected, Object actual) throws Exception {
+        if (expected == null || actual == null) {
+            assertSame(path, expected, actual);
+            return;
+        }
+
+        assertEquals(path, expected.getClass(), actual.getClass());
+
+        if (expected instanceof Collection) {
+            List<?> expectedElements = new ArrayList<>((Collection<?>) expected);
+            List<?> actualElements = new ArrayList<>((Collection<?>) actual);
+            assertEquals(path, expectedElements.size(), actualElements.size());
+            for (int i = 0; i < expectedElements.size(); i++) {
+                assertSameValue(path + '[' + i + ']', expectedElements.get(i), actualElements.get(i));
+            }
+        } else if (expected instanceof Map) {
+            assertEquals(path, ((Map<?, ?>) expected).keySet(), ((Map<?, ?>) actual).keySet());
+            for (Object key : ((Map<?, ?>) expected).keySet()) {
+                assertSameValue(path + '.' + key, ((Map<?, ?>) expected).get(key), ((Map<?, ?>) actual).get(key));
+            }
+        } else if (expected.getClass().getName().startsWith("io.gravitee.") && ! expected.getClass().isEnum()) {
+            for (Class<?> clazz = expected.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    assertSameValue(path + '.' + field.getName(), field.get(expected), field.get(actual));
+                }
+            }
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.search;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import io.gravitee.repository.mongodb.management.internal.model.AuditMongo;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Offsets, next pages and totals of paged searches in each {@link CountMode}, against collections kept in memory
+ * whose documents all match the searches.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoSearchPagerTest {
+
+    private static final String AUDITS = "audits";
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final MongoSearchPager pager = new MongoSearchPager();
+
+    private final InMemoryTemplate mongoTemplate = new InMemoryTemplate();
+
+    @Before
+    public void setUp() {
+        mongoTemplate.fill(AUDITS, 25);
+
+        ReflectionTestUtils.setField(pager, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(pager, "environment", environment);
+    }
+
+    @Test
+    public void shouldCountExactly() {
+        init("exact");
+
+        SearchPage<AuditMongo> page = page(1, 10, 10);
+
+        assertEquals(ids(AUDITS, 11, 20), ids(page));
+        assertEquals(25, page.getTotalElements());
+        assertTrue(page.hasNext());
+        assertTrue(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldCountExactlyOnLastPage() {
+        init("exact");
+
+        SearchPage<AuditMongo> page = page(2, 20, 10);
+
+        assertEquals(ids(AUDITS, 21, 25), ids(page));
+        assertEquals(25, page.getTotalElements());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void shouldNotCount() {
+        init("none");
+
+        SearchPage<AuditMongo> page = page(1, 10, 10);
+
+        assertEquals(ids(AUDITS, 11, 20), ids(page));
+        assertEquals(21, page.getTotalElements());
+        assertTrue(page.hasNext());
+        assertFalse(page.isTotalExact());
+        assertTrue(mongoTemplate.counts.isEmpty());
+    }
+
+    @Test
+    public void shouldKnowTotalOnLastPageWithoutCounting() {
+        init("none");
+
+        SearchPage<AuditMongo> page = page(2, 20, 10);
+
+        assertEquals(ids(AUDITS, 21, 25), ids(page));
+        assertEquals(25, page.getTotalElements());
+        assertFalse(page.hasNext());
+        assertTrue(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldKnowTotalWhenPageEndsExactlyWithDocuments() {
+        init("none");
+
+        SearchPage<AuditMongo> page = page(2, 15, 10);
+
+        assertEquals(10, page.getContent().size());
+        assertEquals(25, page.getTotalElements());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void shouldCountUpToLimit() {
+        environment.setProperty("management.mongodb.search.countLimit", "15");
+        init("bounded");
+
+        SearchPage<AuditMongo> page = page(0, 0, 10);
+
+        assertEquals(15, page.getTotalElements());
+        assertTrue(page.hasNext());
+        assertFalse(page.isTotalExact());
+        assertEquals(Collections.singletonList(15), mongoTemplate.counts);
+    }
+
+    @Test
+    public void shouldCountExactlyBelowLimit() {
+        environment.setProperty("management.mongodb.search.countLimit", "100");
+        init("bounded");
+
+        SearchPage<AuditMongo> page = page(0, 0, 10);
+
+        assertEquals(25, page.getTotalElements());
+        assertTrue(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldNotReportTotalBelowReachedDocuments() {
+        environment.setProperty("management.mongodb.search.countLimit", "5");
+        init("bounded");
+
+        SearchPage<AuditMongo> page = page(1, 10, 10);
+
+        assertEquals(21, page.getTotalElements());
+        assertFalse(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldEstimateUnfilteredSearch() {
+        init("estimated");
+
+        SearchPage<AuditMongo> page = page(0, 0, 10);
+
+        assertEquals(25, page.getTotalElements());
+        assertFalse(page.isTotalExact());
+        assertEquals(Collections.singletonList(-1), mongoTemplate.counts);
+    }
+
+    @Test
+    public void shouldCountFilteredSearchUpToLimit() {
+        environment.setProperty("management.mongodb.search.countLimit", "15");
+        init("estimated");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(where("event").is("UPDATE")), AuditMongo.class, 0, 0, 10);
+
+        assertEquals(15, page.getTotalElements());
+        assertEquals(Collections.singletonList(15), mongoTemplate.counts);
+    }
+
+    @Test
+    public void shouldSkipWholeCollectionsBeforePage() {
+        mongoTemplate.fill("a", 5);
+        mongoTemplate.fill("b", 5);
+        mongoTemplate.fill("c", 5);
+        init("none");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(), AuditMongo.class, Arrays.asList("a", "b", "c"), 1, 7, 4);
+
+        assertEquals(Arrays.asList("b-3", "b-4", "b-5", "c-1"), ids(page));
+        assertEquals(12, page.getTotalElements());
+        assertTrue(page.hasNext());
+        assertFalse(page.isTotalExact());
+        // Only counted up to the documents left to skip
+        assertEquals(Arrays.asList(8, 3), mongoTemplate.counts);
+    }
+
+    @Test
+    public void shouldNotReadCollectionsAfterPage() {
+        mongoTemplate.fill("a", 5);
+        mongoTemplate.fill("b", 5);
+        init("none");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(), AuditMongo.class, Arrays.asList("a", "b"), 0, 0, 3);
+
+        assertEquals(Arrays.asList("a-1", "a-2", "a-3"), ids(page));
+        assertEquals(Collections.singletonList("a"), mongoTemplate.reads);
+    }
+
+    @Test
+    public void shouldCountEveryCollectionExactly() {
+        mongoTemplate.fill("a", 5);
+        mongoTemplate.fill("b", 5);
+        mongoTemplate.fill("c", 5);
+        init("exact");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(), AuditMongo.class, Arrays.asList("a", "b", "c"), 1, 7, 4);
+
+        assertEquals(Arrays.asList("b-3", "b-4", "b-5", "c-1"), ids(page));
+        assertEquals(15, page.getTotalElements());
+        assertTrue(page.hasNext());
+        assertTrue(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldKnowTotalOnLastPageOfCollections() {
+        mongoTemplate.fill("a", 5);
+        mongoTemplate.fill("b", 5);
+        init("none");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(), AuditMongo.class, Arrays.asList("a", "b"), 2, 8, 4);
+
+        assertEquals(Arrays.asList("b-4", "b-5"), ids(page));
+        assertEquals(10, page.getTotalElements());
+        assertFalse(page.hasNext());
+        assertTrue(page.isTotalExact());
+    }
+
+    @Test
+    public void shouldCountCollectionsUpToLimit() {
+        environment.setProperty("management.mongodb.search.countLimit", "8");
+        mongoTemplate.fill("a", 5);
+        mongoTemplate.fill("b", 5);
+        mongoTemplate.fill("c", 5);
+        init("bounded");
+
+        SearchPage<AuditMongo> page = pager.page(new Query(), AuditMongo.class, Arrays.asList("a", "b", "c"), 0, 0, 4);
+
+        assertEquals(8, page.getTotalElements());
+        assertFalse(page.isTotalExact());
+        // The limit left is given to each collection, the last one is not counted
+        assertEquals(Arrays.asList(8, 3), mongoTemplate.counts);
+    }
+
+    @Test
+    public void shouldListWithoutCounting() {
+        init("exact");
+
+        SearchPage<AuditMongo> page = (SearchPage<AuditMongo>) pager.all(new Query(), AuditMongo.class);
+
+        assertEquals(25, page.getContent().size());
+        assertEquals(25, page.getTotalElements());
+        assertFalse(page.hasNext());
+        assertTrue(mongoTemplate.counts.isEmpty());
+    }
+
+    private void init(String countMode) {
+        environment.setProperty("management.mongodb.search.count", countMode);
+        pager.init();
+    }
+
+    private SearchPage<AuditMongo> page(int pageNumber, int offset, int pageSize) {
+        return pager.page(new Query(), AuditMongo.class, pageNumber, offset, pageSize);
+    }
+
+    private static List<String> ids(SearchPage<AuditMongo> page) {
+        return page.getContent().stream().map(AuditMongo::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(String collection, int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            ids.add(collection + '-' + i);
+        }
+        return ids;
+    }
+
+    /**
+     * Keeps the documents of each collection in memory. Reads and counts are recorded, a count being recorded with
+     * its limit, <code>0</code> without limit and <code>-1</code> for an estimation.
+     */
+    private static class InMemoryTemplate extends MongoTemplate {
+
+        private final Map<String, List<AuditMongo>> collections = new HashMap<>();
+        private final List<String> reads = new ArrayList<>();
+        private final List<Integer> counts = new ArrayList<>();
+
+        private InMemoryTemplate() {
+            super((MongoDbFactory) Proxy.newProxyInstance(InMemoryTemplate.class.getClassLoader(),
+                    new Class<?>[] {MongoDbFactory.class}, (proxy, method, args) -> {
+                        if (method.getReturnType() == PersistenceExceptionTranslator.class) {
+                            return new MongoExceptionTranslator();
+                        }
+                        throw new UnsupportedOperationException(method.toString());
+                    }));
+        }
+
+        private void fill(String collection, int size) {
+            List<AuditMongo> audits = new ArrayList<>();
+            for (int i = 1; i <= size; i++) {
+                AuditMongo audit = new AuditMongo();
+                audit.setId(collection + '-' + i);
+                audits.add(audit);
+            }
+            collections.put(collection, audits);
+        }
+
+        @Override
+        public <T> List<T> find(Query query, Class<T> entityClass) {
+            return find(query, entityClass, getCollectionName(entityClass));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> find(Query query, Class<T> entityClass, String collectionName) {
+            reads.add(collectionName);
+            List<AuditMongo> documents = collections.get(collectionName);
+            int from = Math.min(query.getSkip(), documents.size());
+            int to = (query.getLimit() > 0) ? Math.min(from + query.getLimit(), documents.size()) : documents.size();
+            return (List<T>) new ArrayList<>(documents.subList(from, to));
+        }
+
+        @Override
+        public long count(Query query, Class<?> entityClass) {
+            counts.add(0);
+            return collections.get(getCollectionName(entityClass)).size();
+        }
+
+        @Override
+        public DBCollection getCollection(String collectionName) {
+            // Built without a database, only its counts being called
+            InMemoryCollection collection = new ObjenesisStd().newInstance(InMemoryCollection.class);
+            collection.size = collections.get(collectionName).size();
+            collection.counts = counts;
+            return collection;
+        }
+    }
+
+    private static class InMemoryCollection extends DBCollection {
+
+        private int size;
+        private List<Integer> counts;
+
+        private InMemoryCollection() {
+            super(null, null);
+        }
+
+        @Override
+        public long count(DBObject query, DBCollectionCountOptions options) {
+            counts.add(options.getLimit());
+            return (options.getLimit() > 0) ? Math.min(size, options.getLimit()) : size;
+        }
+
+        @Override
+        public long count(DBObject query) {
+            counts.add(0);
+            return size;
+        }
+
+        @Override
+        public long getCount() {
+            counts.add(-1);
+            return size;
+        }
+    }
+}
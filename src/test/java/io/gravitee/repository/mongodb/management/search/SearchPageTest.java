@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.management.search;
+
+import io.gravitee.common.data.domain.Page;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SearchPageTest {
+
+    @Test
+    public void shouldKeepPositionAndTotalWithNewContent() {
+        SearchPage<Integer> page = new SearchPage<>(Arrays.asList(1, 2), 3, 2, 11, true, false);
+
+        Page<String> mapped = SearchPage.withContent(page, Arrays.asList("1", "2"));
+
+        assertTrue(mapped instanceof SearchPage);
+        assertEquals(Arrays.asList("1", "2"), mapped.getContent());
+        assertEquals(3, mapped.getPageNumber());
+        assertEquals(2, mapped.getPageElements());
+        assertEquals(11, mapped.getTotalElements());
+        assertTrue(((SearchPage<String>) mapped).hasNext());
+        assertFalse(((SearchPage<String>) mapped).isTotalExact());
+    }
+
+    @Test
+    public void shouldKeepPlainPage() {
+        Page<Integer> page = new Page<>(Collections.singletonList(1), 0, 1, 1);
+
+        Page<String> mapped = SearchPage.withContent(page, Collections.singletonList("1"));
+
+        assertFalse(mapped instanceof SearchPage);
+        assertEquals(Collections.singletonList("1"), mapped.getContent());
+        assertEquals(1, mapped.getTotalElements());
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoCollection;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.bson.BsonDocument;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class AsyncMongoRateLimitRepositoryTest {
+
+    private static final String KEY = "key";
+
+    private final List<BsonDocument> queries = new ArrayList<>();
+
+    /**
+     * Answers of the find requests, in order. A request without answer is never completed.
+     */
+    private final Queue<Consumer<SingleResultCallback<RateLimit>>> answers = new ArrayDeque<>();
+
+    private AsyncMongoRateLimitRepository repository(RateLimitSchema schema) {
+        AsyncMongoRateLimitRepository repository = new AsyncMongoRateLimitRepository();
+        ReflectionTestUtils.setField(repository, "rateLimitCollection", collection());
+        ReflectionTestUtils.setField(repository, "schema", schema);
+        ReflectionTestUtils.setField(repository, "environment",
+                new MockEnvironment().withProperty("ratelimit.mongodb.async.timeout", "100"));
+        repository.initSchema();
+        return repository;
+    }
+
+    @Test
+    public void shouldCreateRateLimitNotFound() {
+        answers.add(callback -> callback.onResult(null, null));
+
+        RateLimit rateLimit = repository(RateLimitSchema.LEGACY).get(KEY);
+
+        assertEquals(KEY, rateLimit.getKey());
+        assertEquals(0, rateLimit.getCounter());
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void shouldLookForLegacyRateLimitWithFallback() {
+        RateLimit legacy = new RateLimit(KEY);
+        legacy.setCounter(42);
+        answers.add(callback -> callback.onResult(null, null));
+        answers.add(callback -> callback.onResult(legacy, null));
+
+        assertSame(legacy, repository(RateLimitSchema.COMPACT).get(KEY));
+        assertEquals(RateLimitSchema.COMPACT.byKey(KEY), queries.get(0));
+        assertEquals(RateLimitSchema.LEGACY.byKey(KEY), queries.get(1));
+    }
+
+    @Test
+    public void shouldRethrowDriverException() {
+        MongoException failure = new MongoException("failure");
+        answers.add(callback -> callback.onResult(null, failure));
+
+        try {
+            repository(RateLimitSchema.LEGACY).get(KEY);
+            fail();
+        } catch (MongoException me) {
+            assertSame(failure, me);
+        }
+    }
+
+    @Test(expected = MongoTimeoutException.class)
+    public void shouldStopWaitingForLostResponse() {
+        repository(RateLimitSchema.LEGACY).get(KEY);
+    }
+
+    @Test(expected = MongoTimeoutException.class)
+    public void shouldStopWaitingForLostWriteAcknowledgement() {
+        repository(RateLimitSchema.LEGACY).save(new RateLimit(KEY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<RateLimit> collection() {
+        return (MongoCollection<RateLimit>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "find":
+                            queries.add((BsonDocument) args[0]);
+                            return findIterable();
+                        case "replaceOne":
+                            // Never acknowledged
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private FindIterable<RateLimit> findIterable() {
+        return (FindIterable<RateLimit>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FindIterable.class}, (proxy, method, args) -> {
+                    if (! "first".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+
+                    Consumer<SingleResultCallback<RateLimit>> answer = answers.poll();
+                    if (answer != null) {
+                        answer.accept((SingleResultCallback<RateLimit>) args[0]);
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class LocalRateLimitTableTest {
+
+    private static final String KEY = "key";
+
+    private final LocalRateLimitTable table = new LocalRateLimitTable();
+
+    private final long resetTime = System.currentTimeMillis() + 60000;
+
+    @Test
+    public void shouldOnlyCountCallsAfterLastKnownState() {
+        // Read from the database before the failure
+        table.seed(rateLimit(50, resetTime));
+
+        table.save(rateLimit(51, resetTime));
+        table.save(rateLimit(53, resetTime));
+
+        List<RateLimit> deltas = drain();
+        assertEquals(1, deltas.size());
+        assertEquals(3, deltas.get(0).getCounter());
+    }
+
+    @Test
+    public void shouldCountWholeCounterOfUnknownRateLimit() {
+        table.save(rateLimit(2, resetTime));
+
+        List<RateLimit> deltas = drain();
+        assertEquals(1, deltas.size());
+        assertEquals(2, deltas.get(0).getCounter());
+    }
+
+    @Test
+    public void shouldCountWholeCounterOfNewWindow() {
+        table.seed(rateLimit(50, resetTime));
+        table.save(rateLimit(4, resetTime + 60000));
+
+        List<RateLimit> deltas = drain();
+        assertEquals(1, deltas.size());
+        assertEquals(4, deltas.get(0).getCounter());
+    }
+
+    @Test
+    public void shouldIncrementFromLastKnownState() {
+        table.seed(rateLimit(50, resetTime));
+
+        assertEquals(51, table.incrementAndGet(KEY, 1, resetTime, false).getCounter());
+        assertEquals(53, table.incrementAndGet(KEY, 2, resetTime, false).getCounter());
+
+        List<RateLimit> deltas = drain();
+        assertEquals(1, deltas.size());
+        assertEquals(3, deltas.get(0).getCounter());
+    }
+
+    @Test
+    public void shouldNotReconcileSeedsOnly() {
+        table.seed(rateLimit(50, resetTime));
+
+        assertTrue(drain().isEmpty());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void shouldNotReconcileIncrementWrittenAfterTimeout() {
+        table.seed(rateLimit(50, resetTime));
+        table.incrementAndGet(KEY, 1, resetTime, false);
+        table.incrementAndGet(KEY, 2, resetTime, false);
+
+        // The increment of 2 reached the database after all
+        table.discount(rateLimit(52, resetTime), 2);
+
+        List<RateLimit> deltas = drain();
+        assertEquals(1, deltas.size());
+        assertEquals(1, deltas.get(0).getCounter());
+    }
+
+    @Test
+    public void shouldNotDiscountIncrementOfAnotherWindow() {
+        table.seed(rateLimit(50, resetTime));
+        table.incrementAndGet(KEY, 1, resetTime, false);
+
+        table.discount(rateLimit(1, resetTime + 60000), 1);
+
+        assertEquals(1, drain().get(0).getCounter());
+    }
+
+    private List<RateLimit> drain() {
+        List<RateLimit> deltas = new ArrayList<>();
+        table.drain(deltas::add);
+        return deltas;
+    }
+
+    private static RateLimit rateLimit(long counter, long resetTime) {
+        RateLimit rateLimit = new RateLimit(KEY);
+        rateLimit.setCounter(counter);
+        rateLimit.setResetTime(resetTime);
+        return rateLimit;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the near-cache follows every update of the database.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoRateLimitRepositoryCacheTest {
+
+    private static final String KEY = "key";
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("ratelimit.mongodb.cache.enabled", "true");
+
+    /**
+     * Results of the findOneAndUpdate requests, in order.
+     */
+    private final Queue<Supplier<RateLimit>> updates = new ArrayDeque<>();
+
+    private final long resetTime = System.currentTimeMillis() + 60000;
+
+    @Test
+    public void shouldCacheReservedRateLimit() {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+        updates.add(() -> rateLimit(15));
+
+        assertEquals(15, repository.reserve(KEY, 10, 90).getCounter());
+        assertEquals(15, repository.get(KEY).getCounter());
+    }
+
+    @Test
+    public void shouldEvictRateLimitWhichCannotBeReserved() {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+        updates.add(() -> null);
+
+        assertNull(repository.reserve(KEY, 10, 90));
+        assertNull(repository.getNearCache().get(KEY));
+    }
+
+    @Test
+    public void shouldEvictRateLimitOnFailedReserve() {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+        updates.add(() -> {
+            throw new MongoException("failure");
+        });
+
+        try {
+            repository.reserve(KEY, 10, 90);
+            fail();
+        } catch (MongoException me) {
+            assertNull(repository.getNearCache().get(KEY));
+        }
+    }
+
+    @Test
+    public void shouldEvictRateLimitOnFailedIncrement() {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+        updates.add(() -> {
+            throw new MongoException("failure");
+        });
+
+        try {
+            repository.incrementAndGet(KEY, 1, resetTime, false);
+            fail();
+        } catch (MongoException me) {
+            assertNull(repository.getNearCache().get(KEY));
+        }
+    }
+
+    @Test
+    public void shouldServeLeasedQuotaFromCache() {
+        environment.withProperty("ratelimit.mongodb.lease.enabled", "true");
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+        updates.add(() -> rateLimit(15));
+
+        assertTrue(repository.tryAcquire(KEY, 100, resetTime));
+        assertEquals(15, repository.get(KEY).getCounter());
+    }
+
+    private MongoRateLimitRepository repository() {
+        MongoRateLimitRepository repository = new MongoRateLimitRepository();
+        ReflectionTestUtils.setField(repository, "rateLimitCollection", collection());
+        ReflectionTestUtils.setField(repository, "schema", RateLimitSchema.LEGACY);
+        ReflectionTestUtils.setField(repository, "environment", environment);
+        repository.initSchema();
+        repository.initNearCache();
+        repository.initLeasing();
+        return repository;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<RateLimit> collection() {
+        return (MongoCollection<RateLimit>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "replaceOne":
+                            return null;
+                        case "findOneAndUpdate":
+                            return updates.remove().get();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private RateLimit rateLimit(long counter) {
+        RateLimit rateLimit = new RateLimit(KEY);
+        rateLimit.setCounter(counter);
+        rateLimit.setResetTime(resetTime);
+        return rateLimit;
+    }
+}
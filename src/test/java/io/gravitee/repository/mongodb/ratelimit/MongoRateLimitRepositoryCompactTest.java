@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.BasicDBObject;
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.ratelimit.api.RateLimitRepository;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = RateLimitRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+@TestPropertySource(properties = "ratelimit.mongodb.schema.type=compact")
+public class MongoRateLimitRepositoryCompactTest {
+
+    private static final String KEY = "key";
+
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+
+    @Autowired
+    @Qualifier("rateLimitMongoTemplate")
+    private MongoOperations mongoOperations;
+
+    private MongoRateLimitRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = (MongoRateLimitRepository) rateLimitRepository;
+        mongoOperations.remove(new Query(), MongoRateLimitRepository.RATE_LIMIT_COLLECTION);
+    }
+
+    @Test
+    public void shouldFoldLegacyCounterOnFirstIncrement() {
+        long legacyResetTime = System.currentTimeMillis() + 30000;
+        insertLegacy(5, legacyResetTime);
+
+        RateLimit rateLimit = repository.incrementAndGet(KEY, 1, System.currentTimeMillis() + 60000, false);
+
+        assertEquals(6, rateLimit.getCounter());
+        assertEquals(legacyResetTime, rateLimit.getResetTime());
+        assertNull(mongoOperations.getCollection(MongoRateLimitRepository.RATE_LIMIT_COLLECTION)
+                .findOne(new BasicDBObject("_id", KEY)));
+
+        assertEquals(7, repository.incrementAndGet(KEY, 1, System.currentTimeMillis() + 60000, false).getCounter());
+    }
+
+    @Test
+    public void shouldIgnoreExpiredLegacyCounter() {
+        insertLegacy(5, System.currentTimeMillis() - 1000);
+
+        assertEquals(1, repository.incrementAndGet(KEY, 1, System.currentTimeMillis() + 60000, false).getCounter());
+    }
+
+    private void insertLegacy(long counter, long resetTime) {
+        mongoOperations.getCollection(MongoRateLimitRepository.RATE_LIMIT_COLLECTION).insert(new BasicDBObject("_id", KEY)
+                .append(RateLimitSchema.FIELD_COUNTER, counter)
+                .append(RateLimitSchema.FIELD_RESET_TIME, new Date(resetTime))
+                .append(RateLimitSchema.FIELD_CREATED_AT, System.currentTimeMillis())
+                .append(RateLimitSchema.FIELD_UPDATED_AT, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.client.MongoCollection;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how increments given up after the call timeout are counted.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoRateLimitRepositoryFailoverTest {
+
+    private static final String KEY = "key";
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("ratelimit.mongodb.failover.enabled", "true")
+            .withProperty("ratelimit.mongodb.failover.callTimeout", "50")
+            .withProperty("ratelimit.mongodb.failover.threads", "1");
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final long resetTime = System.currentTimeMillis() + 60000;
+
+    @Test
+    public void shouldNotReconcileIncrementWrittenAfterTimeout() throws Exception {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+
+        // The database is too slow, the increment is counted locally
+        assertEquals(6, repository.incrementAndGet(KEY, 1, resetTime, false).getCounter());
+
+        // Then the increment reaches the database anyway
+        release.countDown();
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(repository.getCircuitBreaker(),
+                "executor");
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertTrue(drain(repository).isEmpty());
+    }
+
+    @Test
+    public void shouldReconcileIncrementCountedLocally() {
+        MongoRateLimitRepository repository = repository();
+        repository.save(rateLimit(5));
+
+        assertEquals(6, repository.incrementAndGet(KEY, 1, resetTime, false).getCounter());
+        repository.getCircuitBreaker().stop();
+
+        List<RateLimit> deltas = drain(repository);
+        assertEquals(1, deltas.size());
+        assertEquals(1, deltas.get(0).getCounter());
+    }
+
+    private MongoRateLimitRepository repository() {
+        MongoRateLimitRepository repository = new MongoRateLimitRepository();
+        ReflectionTestUtils.setField(repository, "rateLimitCollection", collection());
+        ReflectionTestUtils.setField(repository, "schema", RateLimitSchema.LEGACY);
+        ReflectionTestUtils.setField(repository, "environment", environment);
+        repository.initSchema();
+        repository.initNearCache();
+        repository.initLeasing();
+        repository.initFailover();
+        return repository;
+    }
+
+    private static List<RateLimit> drain(MongoRateLimitRepository repository) {
+        List<RateLimit> deltas = new ArrayList<>();
+        ((LocalRateLimitTable) ReflectionTestUtils.getField(repository, "localTable")).drain(deltas::add);
+        return deltas;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<RateLimit> collection() {
+        return (MongoCollection<RateLimit>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "replaceOne":
+                            return null;
+                        case "findOneAndUpdate":
+                            release.await();
+                            return rateLimit(6);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private RateLimit rateLimit(long counter) {
+        RateLimit rateLimit = new RateLimit(KEY);
+        rateLimit.setCounter(counter);
+        rateLimit.setResetTime(resetTime);
+        return rateLimit;
+    }
+}
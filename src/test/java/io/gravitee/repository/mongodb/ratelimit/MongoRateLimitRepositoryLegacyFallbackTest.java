@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the legacy fallback is turned off once the legacy documents are gone.
+ *
+ * @author GraviteeSource Team
+ */
+public class MongoRateLimitRepositoryLegacyFallbackTest {
+
+    private static final String KEY = "key";
+
+    private final MockEnvironment environment = new MockEnvironment();
+
+    /**
+     * Names of the collection methods called, in order.
+     */
+    private final List<String> calls = new ArrayList<>();
+
+    private final long resetTime = System.currentTimeMillis() + 60000;
+
+    private boolean legacyLeft;
+
+    @Test
+    public void shouldStopFoldingOnceLegacyDocumentsAreGone() {
+        MongoRateLimitRepository repository = repository();
+
+        repository.incrementAndGet(KEY, 1, resetTime, false);
+        assertEquals(1, count("findOneAndDelete"));
+        assertEquals(1, count("find"));
+
+        repository.incrementAndGet("other", 1, resetTime, false);
+        repository.load("other");
+        assertEquals(1, count("findOneAndDelete"));
+        assertEquals(2, count("find"));
+    }
+
+    @Test
+    public void shouldKeepFoldingWhileLegacyDocumentsAreLeft() {
+        legacyLeft = true;
+        MongoRateLimitRepository repository = repository();
+
+        repository.incrementAndGet(KEY, 1, resetTime, false);
+        repository.incrementAndGet("other", 1, resetTime, false);
+
+        assertEquals(2, count("findOneAndDelete"));
+    }
+
+    @Test
+    public void shouldCheckLegacyDocumentsOncePerInterval() {
+        legacyLeft = true;
+        MongoRateLimitRepository repository = repository();
+
+        repository.incrementAndGet(KEY, 1, resetTime, false);
+        legacyLeft = false;
+        repository.incrementAndGet("other", 1, resetTime, false);
+
+        assertEquals(2, count("findOneAndDelete"));
+        assertEquals(1, count("find"));
+    }
+
+    private MongoRateLimitRepository repository() {
+        MongoRateLimitRepository repository = new MongoRateLimitRepository();
+        ReflectionTestUtils.setField(repository, "rateLimitCollection", collection());
+        ReflectionTestUtils.setField(repository, "schema", RateLimitSchema.COMPACT);
+        ReflectionTestUtils.setField(repository, "environment", environment);
+        repository.initSchema();
+        repository.initNearCache();
+        repository.initLeasing();
+        return repository;
+    }
+
+    private long count(String method) {
+        return calls.stream().filter(method::equals).count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<RateLimit> collection() {
+        return (MongoCollection<RateLimit>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                    calls.add(method.getName());
+                    switch (method.getName()) {
+                        case "findOneAndUpdate":
+                            // A new window is started in the compact layout
+                            RateLimit rateLimit = new RateLimit(KEY);
+                            rateLimit.setCounter(1);
+                            rateLimit.setResetTime(resetTime);
+                            return rateLimit;
+                        case "findOneAndDelete":
+                            return null;
+                        case "find":
+                            return findIterable(legacyLeft ? new RateLimit(KEY) : null);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private FindIterable<?> findIterable(RateLimit first) {
+        return (FindIterable<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FindIterable.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "projection":
+                            return proxy;
+                        case "first":
+                            return first;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
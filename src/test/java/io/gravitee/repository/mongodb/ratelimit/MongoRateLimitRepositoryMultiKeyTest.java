@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.ratelimit.api.RateLimitRepository;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the multi-key get and save of rate-limits against the embedded database.
+ *
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = RateLimitRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoRateLimitRepositoryMultiKeyTest {
+
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+
+    @Autowired
+    @Qualifier("rateLimitMongoTemplate")
+    private MongoOperations mongoOperations;
+
+    private MongoRateLimitRepository repository;
+
+    private final long resetTime = System.currentTimeMillis() + 60000;
+
+    @Before
+    public void setUp() {
+        repository = (MongoRateLimitRepository) rateLimitRepository;
+        mongoOperations.remove(new Query(), MongoRateLimitRepository.RATE_LIMIT_COLLECTION);
+    }
+
+    @Test
+    public void shouldSaveAndGetSeveralKeys() {
+        repository.save(asList(rateLimit("key-1", 1), rateLimit("key-2", 2), rateLimit("key-3", 3)));
+
+        Map<String, RateLimit> rateLimits = repository.get(asList("key-1", "key-2", "key-3"));
+
+        assertEquals(3, rateLimits.size());
+        assertEquals(1, rateLimits.get("key-1").getCounter());
+        assertEquals(2, rateLimits.get("key-2").getCounter());
+        assertEquals(3, rateLimits.get("key-3").getCounter());
+        assertEquals(resetTime, rateLimits.get("key-2").getResetTime());
+    }
+
+    @Test
+    public void shouldOmitUnknownKeys() {
+        repository.save(Collections.singletonList(rateLimit("key-1", 1)));
+
+        Map<String, RateLimit> rateLimits = repository.get(asList("key-1", "unknown"));
+
+        assertEquals(Collections.singleton("key-1"), rateLimits.keySet());
+        assertTrue(repository.get(Collections.singletonList("unknown")).isEmpty());
+    }
+
+    @Test
+    public void shouldReplaceExistingKeysOnSave() {
+        repository.save(rateLimit("key-1", 1));
+
+        repository.save(asList(rateLimit("key-1", 10), rateLimit("key-2", 2)));
+
+        Map<String, RateLimit> rateLimits = repository.get(asList("key-1", "key-2"));
+        assertEquals(10, rateLimits.get("key-1").getCounter());
+        assertEquals(2, rateLimits.get("key-2").getCounter());
+        assertEquals(2, mongoOperations.count(new Query(), MongoRateLimitRepository.RATE_LIMIT_COLLECTION));
+    }
+
+    @Test
+    public void shouldReadSameRateLimitsAsSingleKeyGet() {
+        repository.save(asList(rateLimit("key-1", 1), rateLimit("key-2", 2)));
+
+        Map<String, RateLimit> rateLimits = repository.get(asList("key-1", "key-2"));
+
+        assertEquals(repository.get("key-1").getCounter(), rateLimits.get("key-1").getCounter());
+        assertEquals(repository.get("key-2").getCounter(), rateLimits.get("key-2").getCounter());
+    }
+
+    private RateLimit rateLimit(String key, long counter) {
+        RateLimit rateLimit = new RateLimit(key);
+        rateLimit.setCounter(counter);
+        rateLimit.setResetTime(resetTime);
+        return rateLimit;
+    }
+}
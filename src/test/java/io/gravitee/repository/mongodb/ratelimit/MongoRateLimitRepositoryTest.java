@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.mongodb.config.EmbeddedMongoInitializer;
+import io.gravitee.repository.ratelimit.api.RateLimitRepository;
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author GraviteeSource Team
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = RateLimitRepositoryConfiguration.class, initializers = EmbeddedMongoInitializer.class)
+public class MongoRateLimitRepositoryTest {
+
+    private static final String KEY = "key";
+
+    private static final int THREADS = 16;
+    private static final int CALLS = 500;
+
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+
+    @Autowired
+    @Qualifier("rateLimitMongoTemplate")
+    private MongoOperations mongoOperations;
+
+    private MongoRateLimitRepository repository;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @Before
+    public void setUp() {
+        repository = (MongoRateLimitRepository) rateLimitRepository;
+        mongoOperations.remove(new Query(), MongoRateLimitRepository.RATE_LIMIT_COLLECTION);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCountEveryParallelIncrement() throws Exception {
+        Set<Long> counters = incrementInParallel(System.currentTimeMillis() + 60000);
+
+        assertEquals(CALLS, repository.get(KEY).getCounter());
+        // Each increment has seen its own value
+        assertEquals(CALLS, counters.size());
+        assertEquals(1L, (long) ((TreeSet<Long>) counters).first());
+        assertEquals(CALLS, (long) ((TreeSet<Long>) counters).last());
+    }
+
+    @Test
+    public void shouldCountEveryParallelIncrementOfExpiredWindow() throws Exception {
+        RateLimit expired = new RateLimit(KEY);
+        expired.setCounter(100);
+        expired.setResetTime(System.currentTimeMillis() - 1000);
+        repository.save(expired);
+
+        incrementInParallel(System.currentTimeMillis() + 60000);
+
+        assertEquals(CALLS, repository.get(KEY).getCounter());
+    }
+
+    private Set<Long> incrementInParallel(long resetTime) throws Exception {
+        List<Future<RateLimit>> futures = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(executor.submit(() -> repository.incrementAndGet(KEY, 1, resetTime, false)));
+        }
+
+        Set<Long> counters = new TreeSet<>();
+        for (Future<RateLimit> future : futures) {
+            counters.add(future.get().getCounter());
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RateLimitCodecTest {
+
+    private static final String KEY = "api:plan:subscription";
+
+    @Test
+    public void shouldEncodeLegacyLayout() {
+        BsonDocument document = encode(RateLimitSchema.LEGACY, rateLimit());
+
+        assertEquals(new BsonString(KEY), document.get("_id"));
+        assertEquals(new BsonInt64(10), document.get("counter"));
+        assertEquals(new BsonInt64(1000), document.get("last_request"));
+        assertEquals(new BsonDateTime(60000), document.get("reset_time"));
+        assertEquals(new BsonInt64(2000), document.get("updated_at"));
+        assertEquals(new BsonInt64(500), document.get("created_at"));
+        assertTrue(document.getBoolean("async").getValue());
+        assertEquals(7, document.size());
+    }
+
+    @Test
+    public void shouldEncodeCompactLayout() {
+        BsonDocument document = encode(RateLimitSchema.COMPACT, rateLimit());
+
+        assertEquals(RateLimitSchema.COMPACT.id(KEY), document.get("_id"));
+        assertTrue(document.get("_id") instanceof BsonBinary);
+        assertEquals(new BsonString(KEY), document.get("k"));
+        assertEquals(new BsonInt64(10), document.get("c"));
+        assertEquals(new BsonInt64(1000), document.get("l"));
+        assertEquals(new BsonDateTime(60000), document.get("r"));
+        assertEquals(new BsonInt64(2000), document.get("u"));
+        assertEquals(new BsonInt64(500), document.get("t"));
+        assertTrue(document.getBoolean("a").getValue());
+        assertEquals(8, document.size());
+    }
+
+    @Test
+    public void shouldRoundTripLegacyLayout() {
+        assertRateLimit(decode(RateLimitSchema.LEGACY, encode(RateLimitSchema.LEGACY, rateLimit())));
+    }
+
+    @Test
+    public void shouldRoundTripCompactLayout() {
+        assertRateLimit(decode(RateLimitSchema.COMPACT, encode(RateLimitSchema.COMPACT, rateLimit())));
+    }
+
+    @Test
+    public void shouldReadBothLayoutsWhateverTheSchema() {
+        // Legacy documents are read during the migration to the compact layout, and the other way round
+        assertRateLimit(decode(RateLimitSchema.COMPACT, encode(RateLimitSchema.LEGACY, rateLimit())));
+        assertRateLimit(decode(RateLimitSchema.LEGACY, encode(RateLimitSchema.COMPACT, rateLimit())));
+    }
+
+    @Test
+    public void shouldReadNumbersOfAnyType() {
+        BsonDocument document = new BsonDocument("_id", new BsonString(KEY))
+                .append("counter", new BsonInt32(10))
+                .append("last_request", new BsonDouble(1000))
+                .append("reset_time", new BsonInt64(60000))
+                .append("updated_at", new BsonDateTime(2000))
+                .append("created_at", new BsonInt64(500));
+
+        RateLimit rateLimit = decode(RateLimitSchema.LEGACY, document);
+
+        assertEquals(10, rateLimit.getCounter());
+        assertEquals(1000, rateLimit.getLastRequest());
+        assertEquals(60000, rateLimit.getResetTime());
+        assertEquals(2000, rateLimit.getUpdatedAt());
+        assertEquals(500, rateLimit.getCreatedAt());
+        assertFalse(rateLimit.isAsync());
+    }
+
+    @Test
+    public void shouldSkipUnknownFields() {
+        BsonDocument document = encode(RateLimitSchema.COMPACT, rateLimit())
+                .append("unknown", new BsonDocument("nested", new BsonString("value")));
+
+        assertRateLimit(decode(RateLimitSchema.COMPACT, document));
+    }
+
+    @Test
+    public void shouldDecodeProjectedDocument() {
+        RateLimit rateLimit = decode(RateLimitSchema.COMPACT, new BsonDocument("k", new BsonString(KEY))
+                .append("c", new BsonInt64(3)));
+
+        assertEquals(KEY, rateLimit.getKey());
+        assertEquals(3, rateLimit.getCounter());
+        assertEquals(0, rateLimit.getResetTime());
+    }
+
+    private static BsonDocument encode(RateLimitSchema schema, RateLimit rateLimit) {
+        BsonDocument document = new BsonDocument();
+        new RateLimitCodec(schema).encode(new BsonDocumentWriter(document), rateLimit,
+                EncoderContext.builder().build());
+        return document;
+    }
+
+    private static RateLimit decode(RateLimitSchema schema, BsonDocument document) {
+        return new RateLimitCodec(schema).decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    private static RateLimit rateLimit() {
+        RateLimit rateLimit = new RateLimit(KEY);
+        rateLimit.setCounter(10);
+        rateLimit.setLastRequest(1000);
+        rateLimit.setResetTime(60000);
+        rateLimit.setUpdatedAt(2000);
+        rateLimit.setCreatedAt(500);
+        rateLimit.setAsync(true);
+        return rateLimit;
+    }
+
+    private static void assertRateLimit(RateLimit rateLimit) {
+        assertEquals(KEY, rateLimit.getKey());
+        assertEquals(10, rateLimit.getCounter());
+        assertEquals(1000, rateLimit.getLastRequest());
+        assertEquals(60000, rateLimit.getResetTime());
+        assertEquals(2000, rateLimit.getUpdatedAt());
+        assertEquals(500, rateLimit.getCreatedAt());
+        assertTrue(rateLimit.isAsync());
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grants, renewals and chunk sizes of leases, against a rate-limit kept in memory.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitLeaseManagerTest {
+
+    private static final String KEY = "key";
+
+    private static final long LIMIT = 1000;
+
+    private final InMemoryRepository repository = new InMemoryRepository();
+
+    private final RateLimitLeaseManager leaseManager = new RateLimitLeaseManager(repository, 10, 2, 100, 100);
+
+    @Test
+    public void shouldGrantInitialChunk() {
+        long resetTime = System.currentTimeMillis() + 60000;
+
+        assertTrue(leaseManager.tryAcquire(KEY, LIMIT, resetTime));
+
+        assertEquals(1, leaseManager.getRenewalCount());
+        assertEquals(10, repository.counter);
+        assertEquals(resetTime, repository.resetTime);
+    }
+
+    @Test
+    public void shouldConsumeChunkLocally() {
+        long resetTime = System.currentTimeMillis() + 60000;
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(leaseManager.tryAcquire(KEY, LIMIT, resetTime));
+        }
+
+        assertEquals(1, leaseManager.getRenewalCount());
+        assertEquals(10, repository.counter);
+    }
+
+    @Test
+    public void shouldGrowChunkWhenExhaustedEarly() {
+        long resetTime = System.currentTimeMillis() + 60000;
+
+        for (int i = 0; i < 11; i++) {
+            assertTrue(leaseManager.tryAcquire(KEY, LIMIT, resetTime));
+        }
+
+        // The first chunk has been used up at once: the next one is as large as allowed
+        assertEquals(2, leaseManager.getRenewalCount());
+        assertEquals(Long.valueOf(100), repository.reserved.get(1));
+    }
+
+    @Test
+    public void shouldDenyWhenQuotaIsExhausted() {
+        long resetTime = System.currentTimeMillis() + 60000;
+
+        for (int i = 0; i < 25; i++) {
+            assertTrue(leaseManager.tryAcquire(KEY, 25, resetTime));
+        }
+
+        assertFalse(leaseManager.tryAcquire(KEY, 25, resetTime));
+        assertFalse(leaseManager.tryAcquire(KEY, 25, resetTime));
+        assertEquals(25, repository.counter);
+    }
+
+    @Test
+    public void shouldShrinkChunkWhenExpiredUnused() throws InterruptedException {
+        long resetTime = System.currentTimeMillis() + 500;
+        assertTrue(leaseManager.tryAcquire(KEY, LIMIT, resetTime));
+
+        // A single call out of ten in the window
+        Thread.sleep(600);
+        assertTrue(leaseManager.tryAcquire(KEY, LIMIT, System.currentTimeMillis() + 60000));
+
+        assertEquals(2, leaseManager.getRenewalCount());
+        assertEquals(Long.valueOf(10), repository.reserved.get(0));
+        assertEquals(Long.valueOf(2), repository.reserved.get(1));
+    }
+
+    @Test
+    public void shouldNotShrinkChunkWhenUsedUp() throws InterruptedException {
+        long resetTime = System.currentTimeMillis() + 500;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(leaseManager.tryAcquire(KEY, LIMIT, resetTime));
+        }
+
+        Thread.sleep(600);
+        assertTrue(leaseManager.tryAcquire(KEY, LIMIT, System.currentTimeMillis() + 60000));
+
+        assertEquals(Long.valueOf(10), repository.reserved.get(1));
+    }
+
+    /**
+     * A single rate-limit, reservations being recorded.
+     */
+    private static class InMemoryRepository extends MongoRateLimitRepository {
+
+        private final List<Long> reserved = new ArrayList<>();
+        private long counter;
+        private long resetTime;
+
+        @Override
+        synchronized RateLimit reserve(String rateLimitKey, long amount, long maxCounter) {
+            if (resetTime <= System.currentTimeMillis() || counter > maxCounter) {
+                return null;
+            }
+
+            reserved.add(amount);
+            counter += amount;
+            return rateLimit();
+        }
+
+        @Override
+        synchronized RateLimit load(String rateLimitKey) {
+            return (resetTime == 0) ? null : rateLimit();
+        }
+
+        @Override
+        public synchronized RateLimit incrementAndGet(String rateLimitKey, long weight, long resetTime, boolean async) {
+            if (this.resetTime <= System.currentTimeMillis()) {
+                this.counter = 0;
+                this.resetTime = resetTime;
+            }
+
+            reserved.add(weight);
+            counter += weight;
+            return rateLimit();
+        }
+
+        private RateLimit rateLimit() {
+            RateLimit rateLimit = new RateLimit(KEY);
+            rateLimit.setCounter(counter);
+            rateLimit.setResetTime(resetTime);
+            return rateLimit;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RateLimitRepositoryConfigurationTest {
+
+    private final MockEnvironment environment = new MockEnvironment();
+
+    @Test
+    public void shouldUseSyncDriverByDefault() {
+        assertTrue(configuration().rateLimitRepository() instanceof MongoRateLimitRepository);
+    }
+
+    @Test
+    public void shouldUseAsyncDriver() {
+        environment.withProperty("ratelimit.mongodb.driver", "async");
+
+        assertTrue(configuration().rateLimitRepository() instanceof AsyncMongoRateLimitRepository);
+    }
+
+    @Test
+    public void shouldRejectSyncOnlyFeaturesWithAsyncDriver() {
+        for (String feature : new String[] { "writeBehind", "cache", "lease", "failover" }) {
+            MockEnvironment environment = new MockEnvironment()
+                    .withProperty("ratelimit.mongodb.driver", "async")
+                    .withProperty("ratelimit.mongodb." + feature + ".enabled", "true");
+
+            try {
+                configuration(environment).rateLimitRepository();
+                fail(feature + " must be rejected with the async driver");
+            } catch (IllegalStateException ise) {
+                assertTrue(ise.getMessage().contains("ratelimit.mongodb." + feature));
+            }
+        }
+    }
+
+    private RateLimitRepositoryConfiguration configuration() {
+        return configuration(environment);
+    }
+
+    private static RateLimitRepositoryConfiguration configuration(MockEnvironment environment) {
+        RateLimitRepositoryConfiguration configuration = new RateLimitRepositoryConfiguration();
+        ReflectionTestUtils.setField(configuration, "environment", environment);
+        return configuration;
+    }
+}
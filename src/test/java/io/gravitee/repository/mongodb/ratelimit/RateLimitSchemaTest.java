@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import com.mongodb.MongoClient;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RateLimitSchemaTest {
+
+    private static final String KEY = "key";
+
+    @Test
+    public void shouldQueryLegacyRateLimitByKey() {
+        assertEquals(new BsonDocument("_id", new BsonString(KEY)), RateLimitSchema.LEGACY.byKey(KEY));
+    }
+
+    @Test
+    public void shouldQueryCompactRateLimitByHashOfKey() {
+        BsonDocument query = RateLimitSchema.COMPACT.byKey(KEY);
+
+        assertTrue(query.get("_id").isBinary());
+        assertEquals(16, query.getBinary("_id").getData().length);
+        assertEquals(query, RateLimitSchema.COMPACT.byKey(KEY));
+        assertNotEquals(query, RateLimitSchema.COMPACT.byKey("other"));
+    }
+
+    @Test
+    public void shouldOnlyMatchAsyncRateLimitsOfSchema() {
+        BsonDocument query = document(RateLimitSchema.COMPACT.asyncAfter(42, false));
+
+        assertTrue(query.getBoolean("a").getValue());
+        assertEquals(42, query.getDocument("u").getInt64("$gte").getValue());
+        assertFalse(query.containsKey("$or"));
+    }
+
+    @Test
+    public void shouldAlsoMatchLegacyAsyncRateLimitsWithFallback() {
+        BsonArray or = document(RateLimitSchema.COMPACT.asyncAfter(42, true)).getArray("$or");
+
+        assertEquals(2, or.size());
+        assertTrue(or.get(0).asDocument().containsKey("u"));
+        assertTrue(or.get(1).asDocument().containsKey("updated_at"));
+    }
+
+    @Test
+    public void shouldProjectKeyOfCompactRateLimits() {
+        BsonDocument projection = document(RateLimitSchema.COMPACT.asyncProjection(false));
+
+        assertTrue(projection.containsKey("k"));
+        assertTrue(projection.containsKey("c"));
+        assertFalse(projection.containsKey("counter"));
+        assertFalse(document(RateLimitSchema.LEGACY.asyncProjection(false)).containsKey("k"));
+    }
+
+    @Test
+    public void shouldProjectLegacyFieldsWithFallback() {
+        BsonDocument projection = document(RateLimitSchema.COMPACT.asyncProjection(true));
+
+        assertTrue(projection.containsKey("c"));
+        assertTrue(projection.containsKey("counter"));
+        assertTrue(projection.containsKey("reset_time"));
+    }
+
+    private static BsonDocument document(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.repository.mongodb.ratelimit;
+
+import io.gravitee.repository.ratelimit.model.RateLimit;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RateLimitWriteBehindTest {
+
+    private static final String KEY = "key";
+
+    private final Map<String, RateLimit> database = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReadBufferedStateWhileFlushing() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimitWriteBehind writeBehind = new RateLimitWriteBehind(batch -> {
+            writing.countDown();
+            await(release);
+            store(batch);
+        }, 1000, 100, 100);
+
+        writeBehind.offer(rateLimit(5));
+        Future<?> flush = executor.submit(writeBehind::flush);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // The database still holds nothing, the buffered state must be served
+        RateLimit rateLimit = writeBehind.get(KEY);
+        assertNotNull(rateLimit);
+        assertEquals(5, rateLimit.getCounter());
+        assertEquals(1, writeBehind.getInFlightCount());
+
+        rateLimit.setCounter(rateLimit.getCounter() + 1);
+        writeBehind.offer(rateLimit);
+
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+        writeBehind.flush();
+
+        assertEquals(0, writeBehind.getInFlightCount());
+        assertEquals(6, database.get(KEY).getCounter());
+    }
+
+    @Test
+    public void shouldWaitForInFlightWriteOnRemove() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RateLimitWriteBehind writeBehind = new RateLimitWriteBehind(batch -> {
+            writing.countDown();
+            await(release);
+            store(batch);
+        }, 1000, 100, 100);
+
+        writeBehind.offer(rateLimit(5));
+        Future<?> flush = executor.submit(writeBehind::flush);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Future<RateLimit> removed = executor.submit(() -> writeBehind.remove(KEY));
+        try {
+            removed.get(200, TimeUnit.MILLISECONDS);
+            fail("Remove must wait for the write in progress");
+        } catch (TimeoutException te) {
+            // Expected
+        }
+
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        // Already written by the flush, nothing is left to write
+        assertNull(removed.get(5, TimeUnit.SECONDS));
+        assertEquals(5, database.get(KEY).getCounter());
+    }
+
+    @Test
+    public void shouldRequeueFailedWrite() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        RateLimitWriteBehind writeBehind = new RateLimitWriteBehind(batch -> {
+            if (fail.get()) {
+                throw new IllegalStateException("Unavailable");
+            }
+            store(batch);
+        }, 1000, 100, 100);
+
+        writeBehind.offer(rateLimit(5));
+        writeBehind.flush();
+
+        assertEquals(5, writeBehind.get(KEY).getCounter());
+        assertEquals(1, writeBehind.getPendingCount());
+        assertEquals(0, writeBehind.getInFlightCount());
+
+        fail.set(false);
+        writeBehind.flush();
+
+        assertEquals(5, database.get(KEY).getCounter());
+    }
+
+    @Test
+    public void shouldNotLoseIncrementsRacingFlushes() throws Exception {
+        RateLimitWriteBehind writeBehind = new RateLimitWriteBehind(batch -> {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            store(batch);
+        }, 1000, 100, 100);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Future<?> flusher = executor.submit(() -> {
+            while (running.get()) {
+                writeBehind.flush();
+            }
+        });
+
+        // Same sequence as a gateway: read the current state, from the buffer or from the database, then save it
+        int calls = 20000;
+        for (int i = 0; i < calls; i++) {
+            RateLimit rateLimit = writeBehind.get(KEY);
+            if (rateLimit == null) {
+                RateLimit stored = database.get(KEY);
+                rateLimit = (stored == null) ? rateLimit(0) : new RateLimit(stored);
+            }
+            rateLimit.setCounter(rateLimit.getCounter() + 1);
+            writeBehind.offer(rateLimit);
+        }
+
+        running.set(false);
+        flusher.get(5, TimeUnit.SECONDS);
+        writeBehind.flush();
+
+        assertEquals(calls, database.get(KEY).getCounter());
+    }
+
+    private void store(List<RateLimit> batch) {
+        batch.forEach(rateLimit -> database.put(rateLimit.getKey(), new RateLimit(rateLimit)));
+    }
+
+    private static RateLimit rateLimit(long counter) {
+        RateLimit rateLimit = new RateLimit(KEY);
+        rateLimit.setCounter(counter);
+        return rateLimit;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}